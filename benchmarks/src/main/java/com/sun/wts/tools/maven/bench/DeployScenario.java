@@ -0,0 +1,286 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven.bench;
+
+import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.repository.Repository;
+import org.codehaus.plexus.util.FileUtils;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deploys and resolves a multi-module project through {@link LatencyInjectingWagon},
+ * the way Maven does, and fails if any scenario takes more round trips than its budget.
+ *
+ * <p>
+ * Runs in <tt>mvn -f benchmarks/pom.xml verify</tt>. The latency, bandwidth, size of the project,
+ * and the budgets can be changed with system properties; see the fields.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DeployScenario {
+    /**
+     * Milliseconds added to each round trip, and bytes per second.
+     */
+    private final long latency = Long.getLong("latency",20);
+    private final long bandwidth = Long.getLong("bandwidth",4*1024*1024);
+
+    /**
+     * Shared by all the wagons, since they share sessions.
+     */
+    private final SimulatedNetwork network = new SimulatedNetwork(latency,bandwidth);
+
+    private final int modules = Integer.getInteger("modules",10);
+
+    /**
+     * Number of deployers that deploy at the same time in the concurrent scenario.
+     */
+    private final int deployers = Integer.getInteger("deployers",4);
+
+    /**
+     * Round trips allowed per module, so that a change that adds round trips fails the build.
+     * These are just above what a run takes, which is printed along with the calls;
+     * tighten them as those numbers come down.
+     */
+    private final int deployBudget = Integer.getInteger("budget.deploy",59);
+    private final int deferredDeployBudget = Integer.getInteger("budget.deferredDeploy",30);
+    private final int resolveBudget = Integer.getInteger("budget.resolve",7);
+
+    private File work;
+    private Repository repository;
+    /**
+     * One repository per deployer in the concurrent scenario. The FSFS of SVNKit fails to merge
+     * a commit with another one that was made after the transaction started ("Conflict at ..."),
+     * which a real server does fine, so concurrent commits can't go to the same local repository.
+     * The wagons still share the sessions, credentials, and caches of the JVM.
+     */
+    private final List<Repository> deployerRepositories = new ArrayList<Repository>();
+    private File jar, pom, metadata;
+
+    private final List<String> failures = new ArrayList<String>();
+
+    public static void main(String[] args) throws Exception {
+        DeployScenario s = new DeployScenario();
+        s.setUp();
+        try {
+            s.run();
+        } finally {
+            s.tearDown();
+        }
+        if(!s.failures.isEmpty()) {
+            for (String f : s.failures)
+                System.err.println("FAILED: "+f);
+            System.exit(1);
+        }
+    }
+
+    private void setUp() throws Exception {
+        work = File.createTempFile("wagon-svn","macro");
+        work.delete();
+        work.mkdirs();
+        System.setProperty("wagon.svn.cacheDir",new File(work,"cache").getPath());
+
+        Random r = new Random(0);
+        jar = createFile(new File(work,"module.jar"),256*1024,r);
+        pom = createFile(new File(work,"pom.xml"),4*1024,r);
+        metadata = createFile(new File(work,"maven-metadata.xml"),1024,r);
+
+        FSRepositoryFactory.setup();
+        repository = createRepository("repo");
+        for (int i=0; i<deployers; i++)
+            deployerRepositories.add(createRepository("repo"+i));
+    }
+
+    private Repository createRepository(String name) throws Exception {
+        SVNURL url = SVNRepositoryFactory.createLocalRepository(new File(work,name),true,false);
+        Repository repo = new Repository("macro-"+name,"svn:"+url);
+
+        // the group directory exists in a real repository
+        Wagon w = connect(repo);
+        try {
+            w.put(metadata,"org/example/maven-metadata.xml");
+        } finally {
+            w.disconnect();
+        }
+        return repo;
+    }
+
+    private void tearDown() throws IOException {
+        FileUtils.deleteDirectory(work);
+    }
+
+    private void run() throws Exception {
+        network.reset();
+        deploy(repository,"a",modules);
+        check("deploy",modules,deployBudget);
+
+        System.setProperty("wagon.svn.deferCommit","true");
+        try {
+            deploy(repository,"b",modules);
+            check("deferred deploy",modules,deferredDeployBudget);
+        } finally {
+            System.clearProperty("wagon.svn.deferCommit");
+        }
+
+        resolve("a",modules);
+        check("resolve",modules,resolveBudget);
+
+        // several deployers, each deploying its own modules at the same time
+        ExecutorService es = Executors.newFixedThreadPool(deployers);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i=0; i<deployers; i++) {
+                final String prefix = "c"+i;
+                final Repository repo = deployerRepositories.get(i);
+                results.add(es.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        deploy(repo,prefix,modules);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : results)
+                f.get();
+            check("concurrent deploy",modules*deployers,deployBudget);
+        } finally {
+            // the other deployers must be done with the repository before it's deleted
+            es.shutdownNow();
+            es.awaitTermination(1,TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Deploys modules like Maven does, with one connection per module.
+     */
+    private void deploy(Repository repo, String prefix, int n) throws Exception {
+        for (int i=0; i<n; i++) {
+            String dir = "org/example/"+prefix+"-module"+i;
+            String base = dir+"/1.0/"+prefix+"-module"+i+"-1.0";
+
+            LatencyInjectingWagon w = connect(repo);
+            try {
+                try {
+                    w.get(dir+"/maven-metadata.xml",new File(work,prefix+"-downloaded.xml"));
+                } catch (ResourceDoesNotExistException e) {
+                    // first deployment
+                }
+                w.put(jar,base+".jar");
+                w.put(jar,base+".jar.md5");
+                w.put(jar,base+".jar.sha1");
+                w.put(pom,base+".pom");
+                w.put(pom,base+".pom.md5");
+                w.put(pom,base+".pom.sha1");
+                w.put(metadata,dir+"/maven-metadata.xml");
+                w.put(metadata,dir+"/maven-metadata.xml.md5");
+                w.put(metadata,dir+"/maven-metadata.xml.sha1");
+            } finally {
+                w.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Resolves the modules deployed by {@link #deploy(Repository, String, int)}.
+     */
+    private void resolve(String prefix, int n) throws Exception {
+        File dest = new File(work,"resolved");
+        for (int i=0; i<n; i++) {
+            String dir = "org/example/"+prefix+"-module"+i;
+            String base = dir+"/1.0/"+prefix+"-module"+i+"-1.0";
+
+            LatencyInjectingWagon w = connect(repository);
+            try {
+                w.getIfNewer(dir+"/maven-metadata.xml",new File(dest,dir+"/maven-metadata.xml"),0);
+                w.get(base+".pom",new File(dest,base+".pom"));
+                w.get(base+".pom.sha1",new File(dest,base+".pom.sha1"));
+                w.get(base+".jar",new File(dest,base+".jar"));
+                w.get(base+".jar.sha1",new File(dest,base+".jar.sha1"));
+            } finally {
+                w.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Checks the round trips since the last check against the budget.
+     */
+    private void check(String scenario, int n, int budget) {
+        long roundTrips = network.getRoundTrips();
+        System.out.printf("%s: %d round trips for %d modules (%.1f per module, budget %d) %s%n",
+            scenario, roundTrips, n, (double)roundTrips/n, budget, network.getCounts());
+        if(roundTrips>(long)budget*n)
+            failures.add(scenario+" took "+roundTrips+" round trips, over the budget of "+budget*n);
+        network.reset();
+    }
+
+    private LatencyInjectingWagon connect(Repository repo) throws Exception {
+        LatencyInjectingWagon w = new LatencyInjectingWagon(network);
+        // a local repository takes any user name, but it must not be asked for
+        w.setInteractive(false);
+        AuthenticationInfo auth = new AuthenticationInfo();
+        auth.setUserName("deployer");
+        w.connect(repo,auth);
+        return w;
+    }
+
+    private static File createFile(File f, int size, Random r) throws IOException {
+        byte[] data = new byte[size];
+        for (int i=0; i<size; i++)
+            data[i] = (byte)(' '+r.nextInt(64));
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+}
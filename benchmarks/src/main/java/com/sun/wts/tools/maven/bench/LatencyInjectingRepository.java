@@ -0,0 +1,368 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven.bench;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.ISVNConnectionListener;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
+import org.tmatesoft.svn.core.io.ISVNLocationEntryHandler;
+import org.tmatesoft.svn.core.io.ISVNLockHandler;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.ISVNSession;
+import org.tmatesoft.svn.core.io.ISVNTunnelProvider;
+import org.tmatesoft.svn.core.io.ISVNWorkspaceMediator;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.ISVNDebugLog;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link SVNRepository} that sends every call through a {@link SimulatedNetwork} before
+ * delegating it to a local repository, so that the wagon can't talk to the server
+ * without being counted and delayed.
+ *
+ * <p>
+ * Each call that makes a request to the server is a round trip, and so are the calls to the
+ * commit editor that do so over HTTP. Asking for the repository root or the UUID is only a round
+ * trip if the session doesn't know them yet.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class LatencyInjectingRepository extends SVNRepository {
+    private final SVNRepository delegate;
+    private final SimulatedNetwork network;
+
+    public LatencyInjectingRepository(SVNRepository delegate, SimulatedNetwork network) {
+        super(delegate.getLocation(),delegate.getOptions());
+        this.delegate = delegate;
+        this.network = network;
+    }
+
+    public SVNRepository getDelegate() {
+        return delegate;
+    }
+
+    //
+    // calls that go to the server
+    //
+    public void testConnection() throws SVNException {
+        network.roundTrip("testConnection");
+        delegate.testConnection();
+    }
+
+    public long getLatestRevision() throws SVNException {
+        network.roundTrip("getLatestRevision");
+        return delegate.getLatestRevision();
+    }
+
+    public long getDatedRevision(Date date) throws SVNException {
+        network.roundTrip("getDatedRevision");
+        return delegate.getDatedRevision(date);
+    }
+
+    public Map getRevisionProperties(long revision, Map properties) throws SVNException {
+        network.roundTrip("getRevisionProperties");
+        return delegate.getRevisionProperties(revision,properties);
+    }
+
+    public void setRevisionPropertyValue(long revision, String name, String value) throws SVNException {
+        network.roundTrip("setRevisionPropertyValue");
+        delegate.setRevisionPropertyValue(revision,name,value);
+    }
+
+    public String getRevisionPropertyValue(long revision, String name) throws SVNException {
+        network.roundTrip("getRevisionPropertyValue");
+        return delegate.getRevisionPropertyValue(revision,name);
+    }
+
+    public SVNNodeKind checkPath(String path, long revision) throws SVNException {
+        network.roundTrip("checkPath");
+        return delegate.checkPath(path,revision);
+    }
+
+    public long getFile(String path, long revision, Map properties, OutputStream contents) throws SVNException {
+        network.roundTrip("getFile");
+        return delegate.getFile(path,revision,properties,contents!=null ? new Throttle(contents) : null);
+    }
+
+    public long getDir(String path, long revision, Map properties, ISVNDirEntryHandler handler) throws SVNException {
+        network.roundTrip("getDir");
+        return delegate.getDir(path,revision,properties,handler);
+    }
+
+    public SVNDirEntry getDir(String path, long revision, boolean includeCommitMessages, Collection entries) throws SVNException {
+        network.roundTrip("getDir");
+        return delegate.getDir(path,revision,includeCommitMessages,entries);
+    }
+
+    public SVNDirEntry info(String path, long revision) throws SVNException {
+        network.roundTrip("info");
+        return delegate.info(path,revision);
+    }
+
+    public int getFileRevisions(String path, long startRevision, long endRevision, ISVNFileRevisionHandler handler) throws SVNException {
+        network.roundTrip("getFileRevisions");
+        return delegate.getFileRevisions(path,startRevision,endRevision,handler);
+    }
+
+    public long log(String[] targetPaths, long startRevision, long endRevision, boolean changedPath, boolean strictNode, long limit, ISVNLogEntryHandler handler) throws SVNException {
+        network.roundTrip("log");
+        return delegate.log(targetPaths,startRevision,endRevision,changedPath,strictNode,limit,handler);
+    }
+
+    public int getLocations(String path, long pegRevision, long[] revisions, ISVNLocationEntryHandler handler) throws SVNException {
+        network.roundTrip("getLocations");
+        return delegate.getLocations(path,pegRevision,revisions,handler);
+    }
+
+    public void diff(SVNURL url, long targetRevision, long revision, String target, boolean ignoreAncestry, boolean recursive, boolean getContents, ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
+        network.roundTrip("diff");
+        delegate.diff(url,targetRevision,revision,target,ignoreAncestry,recursive,getContents,reporter,editor);
+    }
+
+    public void diff(SVNURL url, long targetRevision, long revision, String target, boolean ignoreAncestry, boolean recursive, ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
+        network.roundTrip("diff");
+        delegate.diff(url,targetRevision,revision,target,ignoreAncestry,recursive,reporter,editor);
+    }
+
+    public void diff(SVNURL url, long revision, String target, boolean ignoreAncestry, boolean recursive, ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
+        network.roundTrip("diff");
+        delegate.diff(url,revision,target,ignoreAncestry,recursive,reporter,editor);
+    }
+
+    public void update(long revision, String target, boolean recursive, ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
+        network.roundTrip("update");
+        delegate.update(revision,target,recursive,reporter,editor);
+    }
+
+    public void update(SVNURL url, long revision, String target, boolean recursive, ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
+        network.roundTrip("update");
+        delegate.update(url,revision,target,recursive,reporter,editor);
+    }
+
+    public void status(long revision, String target, boolean recursive, ISVNReporterBaton reporter, ISVNEditor editor) throws SVNException {
+        network.roundTrip("status");
+        delegate.status(revision,target,recursive,reporter,editor);
+    }
+
+    public void replay(long lowRevision, long highRevision, boolean sendDeltas, ISVNEditor editor) throws SVNException {
+        network.roundTrip("replay");
+        delegate.replay(lowRevision,highRevision,sendDeltas,editor);
+    }
+
+    public ISVNEditor getCommitEditor(String logMessage, Map locks, boolean keepLocks, ISVNWorkspaceMediator mediator) throws SVNException {
+        network.roundTrip("getCommitEditor");
+        return wrap(delegate.getCommitEditor(logMessage,locks,keepLocks,mediator));
+    }
+
+    public SVNLock getLock(String path) throws SVNException {
+        network.roundTrip("getLock");
+        return delegate.getLock(path);
+    }
+
+    public SVNLock[] getLocks(String path) throws SVNException {
+        network.roundTrip("getLocks");
+        return delegate.getLocks(path);
+    }
+
+    public void lock(Map pathsToRevisions, String comment, boolean force, ISVNLockHandler handler) throws SVNException {
+        network.roundTrip("lock");
+        delegate.lock(pathsToRevisions,comment,force,handler);
+    }
+
+    public void unlock(Map pathToTokens, boolean force, ISVNLockHandler handler) throws SVNException {
+        network.roundTrip("unlock");
+        delegate.unlock(pathToTokens,force,handler);
+    }
+
+    public String getRepositoryUUID(boolean forceConnection) throws SVNException {
+        if(forceConnection && delegate.getRepositoryUUID()==null)
+            network.roundTrip("getRepositoryUUID");
+        return delegate.getRepositoryUUID(forceConnection);
+    }
+
+    public SVNURL getRepositoryRoot(boolean forceConnection) throws SVNException {
+        // the server sends the root along with the UUID
+        if(forceConnection && delegate.getRepositoryUUID()==null)
+            network.roundTrip("getRepositoryRoot");
+        return delegate.getRepositoryRoot(forceConnection);
+    }
+
+    //
+    // local state, which all lives in the delegate
+    //
+    public void closeSession() {
+        delegate.closeSession();
+    }
+
+    public SVNURL getLocation() {
+        return delegate.getLocation();
+    }
+
+    public void setLocation(SVNURL url, boolean forceReconnect) throws SVNException {
+        delegate.setLocation(url,forceReconnect);
+    }
+
+    public String getRepositoryUUID() {
+        return delegate.getRepositoryUUID();
+    }
+
+    public SVNURL getRepositoryRoot() {
+        return delegate.getRepositoryRoot();
+    }
+
+    public String getRepositoryPath(String relativePath) throws SVNException {
+        return delegate.getRepositoryPath(relativePath);
+    }
+
+    public String getFullPath(String relativeOrRepositoryPath) throws SVNException {
+        return delegate.getFullPath(relativeOrRepositoryPath);
+    }
+
+    public void setAuthenticationManager(ISVNAuthenticationManager authManager) {
+        delegate.setAuthenticationManager(authManager);
+    }
+
+    public ISVNAuthenticationManager getAuthenticationManager() {
+        return delegate.getAuthenticationManager();
+    }
+
+    public void setTunnelProvider(ISVNTunnelProvider tunnelProvider) {
+        delegate.setTunnelProvider(tunnelProvider);
+    }
+
+    public ISVNTunnelProvider getTunnelProvider() {
+        return delegate.getTunnelProvider();
+    }
+
+    public void setCanceller(ISVNCanceller canceller) {
+        delegate.setCanceller(canceller);
+    }
+
+    public ISVNCanceller getCanceller() {
+        return delegate.getCanceller();
+    }
+
+    public ISVNSession getOptions() {
+        return delegate.getOptions();
+    }
+
+    public void setDebugLog(ISVNDebugLog log) {
+        delegate.setDebugLog(log);
+    }
+
+    public ISVNDebugLog getDebugLog() {
+        return delegate.getDebugLog();
+    }
+
+    public void addConnectionListener(ISVNConnectionListener listener) {
+        delegate.addConnectionListener(listener);
+    }
+
+    public void removeConnectionListener(ISVNConnectionListener listener) {
+        delegate.removeConnectionListener(listener);
+    }
+
+    /**
+     * Sends the calls to the commit editor through the network too.
+     */
+    private ISVNEditor wrap(final ISVNEditor editor) {
+        return (ISVNEditor)Proxy.newProxyInstance(ISVNEditor.class.getClassLoader(),new Class[]{ISVNEditor.class},new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                if(EDITOR_ROUND_TRIPS.contains(name))
+                    network.roundTrip(name);
+                if(name.equals("textDeltaChunk"))
+                    network.transfer(((SVNDiffWindow)args[1]).getDataLength());
+                try {
+                    return m.invoke(editor,args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            }
+        });
+    }
+
+    /**
+     * Editor calls that make a request to the server over HTTP. The delta of a file is sent
+     * in one request, which ends with {@link ISVNEditor#textDeltaEnd(String)}.
+     */
+    private static final Set<String> EDITOR_ROUND_TRIPS = new HashSet<String>(Arrays.asList(
+        "openRoot","openDir","addDir","deleteEntry","openFile","addFile","textDeltaEnd","closeEdit","abortEdit"));
+
+    /**
+     * Limits the bandwidth of the contents received.
+     */
+    private final class Throttle extends FilterOutputStream {
+        Throttle(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            network.transfer(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            network.transfer(len);
+            out.write(b,off,len);
+        }
+    }
+}
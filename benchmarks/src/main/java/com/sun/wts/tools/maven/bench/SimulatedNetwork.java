@@ -0,0 +1,138 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven.bench;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Network between the wagons and a local repository, which adds latency to each round trip
+ * and limits the bandwidth, and counts the round trips.
+ *
+ * <p>
+ * Sessions outlive the wagon that opened them in the session cache, so the counts are kept here
+ * and shared by all the wagons of a run, rather than by each wagon.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SimulatedNetwork {
+    /**
+     * Milliseconds added to each round trip.
+     */
+    private final long latency;
+
+    /**
+     * Bytes per second in each direction. 0 for unlimited.
+     */
+    private final long bandwidth;
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final ConcurrentMap<String,AtomicLong> counts = new ConcurrentHashMap<String,AtomicLong>();
+
+    public SimulatedNetwork(long latency, long bandwidth) {
+        this.latency = latency;
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Called for each request to the server, before it's made.
+     */
+    public void roundTrip(String op) {
+        roundTrips.incrementAndGet();
+        AtomicLong c = counts.get(op);
+        if(c==null) {
+            counts.putIfAbsent(op,new AtomicLong());
+            c = counts.get(op);
+        }
+        c.incrementAndGet();
+        sleep(latency);
+    }
+
+    /**
+     * Nanoseconds that each thread owes for the bytes it transferred, which are only slept
+     * once they add up to a millisecond, since most writes are much shorter than that.
+     */
+    private final ThreadLocal<long[]> owed = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * Called for the bytes sent or received.
+     */
+    public void transfer(long bytes) {
+        if(bandwidth<=0)    return;
+        long[] o = owed.get();
+        o[0] += bytes*1000000000L/bandwidth;
+        if(o[0]>=1000000L) {
+            sleep(o[0]/1000000L);
+            o[0] %= 1000000L;
+        }
+    }
+
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * Round trips so far, by the name of the call.
+     */
+    public Map<String,Long> getCounts() {
+        Map<String,Long> r = new TreeMap<String,Long>();
+        for (Map.Entry<String,AtomicLong> e : counts.entrySet())
+            r.put(e.getKey(),e.getValue().get());
+        return r;
+    }
+
+    public void reset() {
+        roundTrips.set(0);
+        counts.clear();
+    }
+
+    private static void sleep(long ms) {
+        if(ms<=0)   return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
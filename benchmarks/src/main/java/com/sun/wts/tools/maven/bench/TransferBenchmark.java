@@ -0,0 +1,247 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven.bench;
+
+import com.sun.wts.tools.maven.FullTextSender;
+import com.sun.wts.tools.maven.SubversionWagon;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.repository.Repository;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the transfer paths of {@link SubversionWagon} against a throwaway FSFS repository.
+ *
+ * <p>
+ * The put benchmarks connect, put, and disconnect (which is when the commit happens),
+ * just like Maven does for each artifact. The get benchmarks reuse one connection per iteration,
+ * so that they measure the transfer itself.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=5)
+@Measurement(iterations=5, time=5)
+@Fork(1)
+public class TransferBenchmark {
+    /**
+     * The repository and the files to upload, shared by all the benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Fixture {
+        File work;
+        Repository repository;
+        File small, large, site;
+        final AtomicInteger counter = new AtomicInteger();
+        final FullTextSender fullText = new FullTextSender();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            work = File.createTempFile("wagon-svn","bench");
+            work.delete();
+            work.mkdirs();
+            // keep the caches of the benchmark away from the user's
+            System.setProperty("wagon.svn.cacheDir",new File(work,"cache").getPath());
+
+            FSRepositoryFactory.setup();
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(new File(work,"repo"),true,false);
+            repository = new Repository("bench","svn:"+url);
+
+            Random r = new Random(0);
+            small = createFile(new File(work,"small.txt"),2*1024,r);
+            large = createFile(new File(work,"large.bin"),8*1024*1024,r);
+
+            // something like a javadoc site: 20 packages of 25 small HTML files
+            site = new File(work,"site");
+            for (int i=0; i<20; i++)
+                for (int j=0; j<25; j++)
+                    createFile(new File(site,"pkg"+i+"/Class"+j+".html"),4*1024,r);
+
+            Wagon w = connect();
+            w.put(small,"get/small.txt");
+            w.put(large,"get/large.bin");
+            w.disconnect();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(work);
+        }
+
+        Wagon connect() throws Exception {
+            Wagon w = new SubversionWagon();
+            w.connect(repository);
+            return w;
+        }
+    }
+
+    /**
+     * A connected wagon for the get benchmarks, one per thread.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+        Wagon wagon;
+        File download;
+
+        @Setup(Level.Iteration)
+        public void setUp(Fixture f) throws Exception {
+            wagon = f.connect();
+            download = File.createTempFile("download",".tmp",f.work);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            wagon.disconnect();
+            download.delete();
+        }
+    }
+
+    @Benchmark
+    public void putSmall(Fixture f) throws Exception {
+        Wagon w = f.connect();
+        w.put(f.small,"put/small"+f.counter.incrementAndGet()+".txt");
+        w.disconnect();
+    }
+
+    @Benchmark
+    @Measurement(iterations=5, time=20)
+    public void putLarge(Fixture f) throws Exception {
+        Wagon w = f.connect();
+        w.put(f.large,"put/large.bin");
+        w.disconnect();
+    }
+
+    @Benchmark
+    @Measurement(iterations=5, time=20)
+    public void putDirectory(Fixture f) throws Exception {
+        Wagon w = f.connect();
+        w.putDirectory(f.site,"site");
+        w.disconnect();
+    }
+
+    @Benchmark
+    public void getSmall(Connection c) throws Exception {
+        c.wagon.get("get/small.txt",c.download);
+    }
+
+    @Benchmark
+    public void getLarge(Connection c) throws Exception {
+        c.wagon.get("get/large.bin",c.download);
+    }
+
+    /**
+     * Mostly the "not modified" path, since the same file is asked for over and over.
+     */
+    @Benchmark
+    public boolean getIfNewer(Connection c) throws Exception {
+        return c.wagon.getIfNewer("get/small.txt",c.download,0);
+    }
+
+    /**
+     * The full-text upload path alone, without a server. With the GC profiler,
+     * the allocation per operation should stay the same no matter how big the file is.
+     */
+    @Benchmark
+    public String sendFullText(Fixture f) throws Exception {
+        return f.fullText.send(NULL_CONSUMER,"large.bin",f.large);
+    }
+
+    private static final ISVNDeltaConsumer NULL_CONSUMER = new ISVNDeltaConsumer() {
+        public void applyTextDelta(String path, String baseChecksum) {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {
+        }
+    };
+
+    private static File createFile(File f, int size, Random r) throws IOException {
+        f.getParentFile().mkdirs();
+        // printable text, so that it compresses and deltas like real files do
+        byte[] data = new byte[size];
+        for (int i=0; i<size; i++)
+            data[i] = (byte)(' '+r.nextInt(64));
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    /**
+     * Runs all the benchmarks with the GC profiler, to report the allocation rate along with the throughput.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(TransferBenchmark.class.getName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
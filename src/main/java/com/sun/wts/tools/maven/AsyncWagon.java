@@ -0,0 +1,295 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking front end to a connected {@link SubversionWagon}, for applications
+ * that embed the wagon and run many transfers at once.
+ *
+ * <p>
+ * Downloads are queued to an executor, and each runs on one of the read sessions of the wagon.
+ * Uploads are queued and sent from one thread, and everything that queues up while a change
+ * is being committed goes into the next commit, so many concurrent uploads become a few commits.
+ * The future of an upload completes when its commit does.
+ *
+ * <p>
+ * Both queues are bounded by <tt>wagon.svn.asyncQueue</tt>. Beyond that, the thread that requests
+ * a download runs it by itself, and the thread that requests an upload waits for room.
+ *
+ * <p>
+ * {@link Future#cancel(boolean)} withdraws a transfer that hasn't started yet. An upload
+ * that is already being sent still goes in, even though its future reports the cancellation.
+ * Closing this object doesn't disconnect the wagon. Other puts to the same wagon shouldn't
+ * be mixed with the ones through this object, since they'd be committed with them.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class AsyncWagon {
+    private final SubversionWagon wagon;
+
+    private final Listener listener;
+
+    /**
+     * Runs downloads.
+     */
+    private final ExecutorService readers;
+
+    /**
+     * Sends uploads, one batch at a time.
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new Daemon("wagon-svn async put"));
+
+    /**
+     * Uploads waiting for the next batch.
+     */
+    private final BlockingQueue<Transfer> uploads = new LinkedBlockingQueue<Transfer>(QUEUE_SIZE);
+
+    /**
+     * True if a batch is queued to {@link #writer} and hasn't started to drain {@link #uploads} yet.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    /**
+     * Maximum number of downloads or uploads waiting to run.
+     */
+    private static final int QUEUE_SIZE = Integer.getInteger("wagon.svn.asyncQueue",10000);
+
+    /**
+     * Receives the completion of transfers, so that callers don't need to wait on the futures.
+     */
+    public interface Listener {
+        /**
+         * Called from the thread that did the transfer, or the thread that cancelled it.
+         *
+         * @param transfer
+         *      Already done.
+         */
+        void completed(String resourceName, Future<File> transfer);
+    }
+
+    public AsyncWagon(SubversionWagon wagon) {
+        this(wagon,null);
+    }
+
+    public AsyncWagon(SubversionWagon wagon, Listener listener) {
+        this(wagon,listener,new ThreadPoolExecutor(wagon.getReadSessions(),wagon.getReadSessions(),
+            60,TimeUnit.SECONDS,new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+            new Daemon("wagon-svn async get"),new ThreadPoolExecutor.CallerRunsPolicy() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+                    // the default policy silently drops the task once shut down
+                    if(e.isShutdown())  throw new RejectedExecutionException("Already closed");
+                    super.rejectedExecution(r,e);
+                }
+            }));
+    }
+
+    /**
+     * @param readers
+     *      Executor that runs downloads. Downloads block while waiting for a read session,
+     *      so an executor with cheap threads (such as virtual threads) can take any number of them.
+     *      Shut down by {@link #close()}.
+     */
+    public AsyncWagon(SubversionWagon wagon, Listener listener, ExecutorService readers) {
+        this.wagon = wagon;
+        this.listener = listener;
+        this.readers = readers;
+    }
+
+    /**
+     * Queues a download.
+     *
+     * @return
+     *      Future that yields the destination file, or fails with the exception
+     *      {@link SubversionWagon#get(String, File)} throws, or {@link RejectedExecutionException}
+     *      if this object is already closed.
+     */
+    public Future<File> get(final String resourceName, final File destination) {
+        Transfer t = new Transfer(resourceName,new Callable<File>() {
+            public File call() throws Exception {
+                wagon.get(resourceName,destination);
+                return destination;
+            }
+        });
+        try {
+            if(closed)  throw new RejectedExecutionException("Already closed");
+            readers.execute(t);
+        } catch (RejectedExecutionException e) {
+            t.fail(e);
+        }
+        return t;
+    }
+
+    /**
+     * Queues an upload.
+     *
+     * @return
+     *      Future that yields the source file once it's committed. If the commit fails,
+     *      all the uploads in it fail with the same exception. Fails with
+     *      {@link RejectedExecutionException} if this object is already closed.
+     */
+    public Future<File> put(final File source, String destination) {
+        Transfer t = new Transfer(destination,new Callable<File>() {
+            public File call() {
+                return source;
+            }
+        });
+        t.source = source;
+        try {
+            if(closed)  throw new RejectedExecutionException("Already closed");
+            uploads.put(t);
+            if(!scheduled.getAndSet(true)) {
+                try {
+                    writer.execute(new Runnable() {
+                        public void run() {
+                            send();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // closed in the mean time. nobody is going to send what's queued
+                    scheduled.set(false);
+                    Transfer u;
+                    while((u=uploads.poll())!=null)
+                        u.fail(e);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            t.fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            t.fail(e);
+        }
+        return t;
+    }
+
+    /**
+     * Sends all the uploads queued so far, and commits them.
+     */
+    private void send() {
+        scheduled.set(false);   // later puts need another batch
+
+        Map<String,File> files = new LinkedHashMap<String,File>();
+        List<Transfer> batch = new ArrayList<Transfer>();
+        Transfer t;
+        while((t=uploads.poll())!=null) {
+            if(t.isCancelled())     continue;
+            files.put(t.resourceName,t.source);
+            batch.add(t);
+        }
+        if(files.isEmpty())     return;
+
+        try {
+            wagon.putAll(files);
+            wagon.commit();
+            for (Transfer u : batch)
+                u.run();
+        } catch (Throwable e) {
+            // don't let the rest of this batch go into the next commit
+            wagon.rollback();
+            for (Transfer u : batch)
+                u.fail(e);
+        }
+    }
+
+    /**
+     * Waits for all the queued transfers to finish, and releases the threads.
+     * Transfers requested after this fail with {@link RejectedExecutionException}.
+     */
+    public void close() throws InterruptedException {
+        closed = true;
+        readers.shutdown();
+        writer.shutdown();
+        readers.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+        writer.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+    }
+
+    private final class Transfer extends FutureTask<File> {
+        final String resourceName;
+        /**
+         * File to be uploaded, or null for a download.
+         */
+        File source;
+
+        Transfer(String resourceName, Callable<File> task) {
+            super(task);
+            this.resourceName = resourceName;
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+
+        @Override
+        protected void done() {
+            if(listener!=null)
+                listener.completed(resourceName,this);
+        }
+    }
+
+    private static final class Daemon implements ThreadFactory {
+        private final String name;
+
+        Daemon(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,name);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
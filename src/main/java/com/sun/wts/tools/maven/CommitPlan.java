@@ -0,0 +1,321 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Set of files to be committed, sorted by their paths.
+ *
+ * <p>
+ * Instead of walking the commit editor down from the root for every file,
+ * files are recorded here and then sent in one depth-first pass, so that
+ * each directory is opened only once. If the same path is put more than once
+ * (which Maven does for <tt>maven-metadata.xml</tt> and its checksums),
+ * only the last one is sent.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class CommitPlan {
+    private Dir root = new Dir();
+
+    private int size;
+
+    /**
+     * Sends the contents of one file to the commit editor.
+     */
+    public interface Sender {
+        /**
+         * Called after the file is opened or added. Implementation needs to
+         * send the text delta, but not close the file.
+         *
+         * @param exists
+         *      True if the file already exists in the repository, false if it's just added.
+         * @return
+         *      MD5 checksum of the file.
+         */
+        String send(ISVNEditor editor, String path, File source, boolean exists) throws SVNException, IOException;
+    }
+
+    /**
+     * File to be sent.
+     */
+    public static final class Item {
+        public final String path;
+        public final File source;
+        /**
+         * True if the file already exists in the repository.
+         */
+        public final boolean exists;
+
+        Item(String path, File source, boolean exists) {
+            this.path = path;
+            this.source = source;
+            this.exists = exists;
+        }
+    }
+
+    private static final class Dir {
+        final Map<String,Dir> dirs = new TreeMap<String,Dir>();
+        final Map<String,File> files = new TreeMap<String,File>();
+        final Set<String> deletes = new TreeSet<String>();
+
+        Dir dir(String name) {
+            Dir d = dirs.get(name);
+            if(d==null)
+                dirs.put(name,d=new Dir());
+            return d;
+        }
+    }
+
+    /**
+     * Records a file to be committed.
+     *
+     * @param path
+     *      Path from the repository root, like "/trunk/repository/foo/bar.jar"
+     */
+    public void add(String path, File source) {
+        String[] names = path.split("/");
+        Dir d = parent(names);
+        String name = names[names.length-1];
+        if(d.deletes.remove(name))
+            size--;
+        if(d.files.put(name,source)==null)
+            size++;
+    }
+
+    /**
+     * Records a file to be deleted.
+     *
+     * @param path
+     *      Path from the repository root, like "/trunk/www/old.html"
+     */
+    public void delete(String path) {
+        String[] names = path.split("/");
+        Dir d = parent(names);
+        String name = names[names.length-1];
+        if(d.files.remove(name)!=null)
+            size--;
+        if(d.deletes.add(name))
+            size++;
+    }
+
+    private Dir parent(String[] names) {
+        Dir d = root;
+        for (int i=0; i<names.length-1; i++)
+            if(names[i].length()>0)
+                d = d.dir(names[i]);
+        return d;
+    }
+
+    /**
+     * Discards all the changes recorded so far.
+     */
+    public void clear() {
+        root = new Dir();
+        size = 0;
+    }
+
+    /**
+     * Number of files to be added, updated, or deleted in this plan.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size==0;
+    }
+
+    /**
+     * Total size of the files to be sent.
+     */
+    public long getBytes() {
+        return bytes(root);
+    }
+
+    private long bytes(Dir d) {
+        long r = 0;
+        for (Dir c : d.dirs.values())
+            r += bytes(c);
+        for (File f : d.files.values())
+            r += f.length();
+        return r;
+    }
+
+    /**
+     * Moves the changes in this plan into smaller plans, each of which can be
+     * committed separately. Plans are cut at directory boundaries, once they
+     * reach the given limits. A directory that alone is twice as big as the limits
+     * is cut in the middle.
+     *
+     * @param maxFiles
+     *      Number of files in one plan. 0 for no limit.
+     * @param maxBytes
+     *      Size of the files in one plan. 0 for no limit.
+     */
+    public List<CommitPlan> split(int maxFiles, long maxBytes) {
+        Splitter s = new Splitter(maxFiles,maxBytes);
+        s.walk("",root);
+        s.cut();
+        root = new Dir();
+        size = 0;
+        return s.chunks;
+    }
+
+    private static final class Splitter {
+        final int maxFiles;
+        final long maxBytes;
+        final List<CommitPlan> chunks = new ArrayList<CommitPlan>();
+        CommitPlan current = new CommitPlan();
+        long bytes;
+
+        Splitter(int maxFiles, long maxBytes) {
+            this.maxFiles = maxFiles;
+            this.maxBytes = maxBytes;
+        }
+
+        void walk(String path, Dir d) {
+            for (String name : d.deletes) {
+                current.delete(path+'/'+name);
+                if(isFull(2))   cut();
+            }
+            for (Map.Entry<String,Dir> e : d.dirs.entrySet()) {
+                walk(path+'/'+e.getKey(),e.getValue());
+                if(isFull(1))   cut();
+            }
+            for (Map.Entry<String,File> e : d.files.entrySet()) {
+                current.add(path+'/'+e.getKey(),e.getValue());
+                bytes += e.getValue().length();
+                if(isFull(2))   cut();
+            }
+        }
+
+        boolean isFull(int factor) {
+            return (maxFiles>0 && current.size>=maxFiles*factor)
+                || (maxBytes>0 && bytes>=maxBytes*factor);
+        }
+
+        void cut() {
+            if(current.isEmpty())   return;
+            chunks.add(current);
+            current = new CommitPlan();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Lists up the files to be sent, in the order {@link #send(ISVNEditor, RemoteTree, Sender)}
+     * will send them.
+     */
+    public List<Item> files(RemoteTree tree) throws SVNException {
+        List<Item> r = new ArrayList<Item>(size);
+        files(tree,"",root,r);
+        return r;
+    }
+
+    private void files(RemoteTree tree, String path, Dir d, List<Item> r) throws SVNException {
+        for (Map.Entry<String,Dir> e : d.dirs.entrySet())
+            files(tree,path+'/'+e.getKey(),e.getValue(),r);
+        for (Map.Entry<String,File> e : d.files.entrySet()) {
+            String filePath = path+'/'+e.getKey();
+            r.add(new Item(filePath,e.getValue(),tree.exists(filePath)));
+        }
+    }
+
+    /**
+     * Drives the commit editor to send all the changes in this plan, then clears the plan.
+     *
+     * @param editor
+     *      The editor whose root directory is already open. This method leaves it open.
+     * @param tree
+     *      Used to decide if we need to add or open a directory or a file.
+     */
+    public void send(ISVNEditor editor, RemoteTree tree, Sender sender) throws SVNException, IOException {
+        Dir d = root;
+        root = new Dir();
+        size = 0;
+        send(editor,tree,sender,"",d);
+    }
+
+    private void send(ISVNEditor editor, RemoteTree tree, Sender sender, String path, Dir d) throws SVNException, IOException {
+        for (String name : d.deletes) {
+            String child = path+'/'+name;
+            editor.deleteEntry(child,-1);
+            tree.deleted(child);
+        }
+
+        for (Map.Entry<String,Dir> e : d.dirs.entrySet()) {
+            String child = path+'/'+e.getKey();
+            if(tree.exists(child)) {
+                try {
+                    editor.openDir(child,-1);
+                } catch (SVNException x) {
+                    // in case it fails, try to fall back to add
+                    editor.addDir(child,null,-1);
+                }
+            } else {
+                editor.addDir(child,null,-1);
+                tree.added(child,true);
+            }
+            send(editor,tree,sender,child,e.getValue());
+            editor.closeDir();
+        }
+
+        for (Map.Entry<String,File> e : d.files.entrySet()) {
+            String filePath = path+'/'+e.getKey();
+            boolean exists = tree.exists(filePath);
+            if(exists)
+                editor.openFile(filePath,-1);
+            else {
+                editor.addFile(filePath,null,-1);
+                tree.added(filePath,false);
+            }
+            String checksum = sender.send(editor,filePath,e.getValue(),exists);
+            editor.closeFile(filePath,checksum);
+        }
+    }
+}
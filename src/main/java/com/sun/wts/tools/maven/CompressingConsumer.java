@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits in front of the commit editor and decides whether the delta windows of a file
+ * are compressed with zlib (svndiff1) when they are written, instead of the editor.
+ *
+ * <p>
+ * The svn:// editor compresses every window once the server says it understands svndiff1,
+ * including those of jars, where zlib only burns CPU, and the DAV editor never compresses.
+ * Each window is copied into a window of our own, whose {@link SVNDiffWindow#writeTo(OutputStream, boolean, boolean)}
+ * makes that choice. The consumer has to be done with a window when
+ * {@link #textDeltaChunk(String, SVNDiffWindow)} returns, so one buffer serves all the windows.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class CompressingConsumer implements ISVNDeltaConsumer {
+    private final ISVNDeltaConsumer editor;
+    /**
+     * False if the file is already compressed, so that its windows are never compressed.
+     */
+    private final boolean compressible;
+    /**
+     * True to compress the windows even though the editor doesn't ask for it,
+     * since the editor never does even if the server can read svndiff1.
+     */
+    private final boolean always;
+    /**
+     * Number of bytes compression saved so far. Shared by all the files.
+     */
+    private final AtomicLong saved;
+
+    private ByteBuffer buf;
+
+    CompressingConsumer(ISVNDeltaConsumer editor, boolean compressible, boolean always, AtomicLong saved) {
+        this.editor = editor;
+        this.compressible = compressible;
+        this.always = always;
+        this.saved = saved;
+    }
+
+    public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        editor.applyTextDelta(path,baseChecksum);
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow w) throws SVNException {
+        if(!w.hasInstructions())
+            return editor.textDeltaChunk(path,w);   // nothing to compress
+
+        int len = w.getDataLength();
+        if(buf==null || buf.capacity()<len)
+            buf = ByteBuffer.allocate(len);
+        buf.clear();
+        Window copy = new Window(w);
+        w.clone(buf);   // copies the instructions and the data, without moving the position
+        copy.setData(buf);
+        return editor.textDeltaChunk(path,copy);
+    }
+
+    public void textDeltaEnd(String path) throws SVNException {
+        editor.textDeltaEnd(path);
+    }
+
+    private final class Window extends SVNDiffWindow {
+        Window(SVNDiffWindow w) {
+            super(w.getSourceViewOffset(),w.getSourceViewLength(),w.getTargetViewLength(),
+                w.getInstructionsLength(),w.getNewDataLength());
+        }
+
+        /**
+         * The DAV editor calls this one.
+         */
+        @Override
+        public void writeTo(OutputStream os, boolean writeHeader) throws IOException {
+            writeTo(os,writeHeader,false);
+        }
+
+        /**
+         * The svn:// editor calls this one, asking for compression if the server supports it.
+         */
+        @Override
+        public void writeTo(OutputStream os, boolean writeHeader, boolean compress) throws IOException {
+            if(!compressible || !(compress || always)) {
+                super.writeTo(os,writeHeader,false);
+                return;
+            }
+            if(writeHeader)
+                os.write(SVN1_HEADER);
+            Counter c = new Counter(os);
+            super.writeTo(c,false,true);
+            saved.addAndGet(getDataLength()-c.count);
+        }
+    }
+
+    private static final class Counter extends FilterOutputStream {
+        long count;
+
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b,off,len);
+            count += len;
+        }
+    }
+}
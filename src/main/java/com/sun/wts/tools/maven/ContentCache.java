@@ -0,0 +1,329 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of files downloaded from repositories, shared by all the builds on the host.
+ *
+ * <p>
+ * A file in a repository is identified by the repository UUID, its path, and the revision
+ * it was last changed at, and that identifies its contents forever. We map that to
+ * the MD5 checksum of the contents, and keep the contents by their checksums,
+ * so the same file in different places is only stored once.
+ *
+ * <p>
+ * Every file is written to a temporary file first and then renamed into place,
+ * so multiple JVMs can use the same cache at the same time. The least recently used
+ * contents are deleted when the cache grows beyond its maximum size, along with
+ * the index entries that point to them.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class ContentCache {
+    private final File index;
+
+    private final File blobs;
+
+    private final long maxSize;
+
+    /**
+     * Approximate total size of the contents, or -1 if we haven't computed it yet.
+     */
+    private long size = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ContentCache(File dir, long maxSize) {
+        this.index = new File(dir,"index");
+        this.blobs = new File(dir,"blobs");
+        this.maxSize = maxSize;
+        index.mkdirs();
+        blobs.mkdirs();
+    }
+
+    /**
+     * Looks up the contents of a file.
+     *
+     * @param revisions
+     *      Any revision at which the file has the contents we want, such as the revision it was
+     *      last changed at, or the revision we are reading from. Tried in this order.
+     * @return
+     *      The MD5 checksum of the contents, which is also the name of the file returned
+     *      by {@link #getContent(String)}. null if it's not in the cache.
+     *      The caller reports the outcome with {@link #hit()} or {@link #miss()}, since
+     *      a lookup can take more than one call, and the contents may still turn out unusable.
+     */
+    public String lookup(String uuid, String path, long... revisions) {
+        for (long revision : revisions) {
+            File idx = indexFile(uuid,path,revision);
+            try {
+                if(idx.exists()) {
+                    String checksum = readString(idx);
+                    File blob = new File(blobs,checksum);
+                    if(blob.exists()) {
+                        // remember that it's recently used
+                        blob.setLastModified(System.currentTimeMillis());
+                        return checksum;
+                    }
+                    idx.delete();   // the contents are evicted
+                }
+            } catch (IOException e) {
+                // treat as a miss
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records that a file is copied from the cache.
+     */
+    public void hit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Records that a file had to be downloaded from the server.
+     */
+    public void miss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Gets the cached contents of the given checksum.
+     */
+    public File getContent(String checksum) {
+        return new File(blobs,checksum);
+    }
+
+    /**
+     * Discards the contents of the given checksum, because they turned out to be corrupt.
+     * Index entries that point to them are discarded as they are looked up.
+     */
+    public void discard(String checksum) {
+        getContent(checksum).delete();
+    }
+
+    /**
+     * Stores the contents of a file.
+     *
+     * @param revisions
+     *      Revisions at which the file has these contents.
+     * @param checksum
+     *      MD5 checksum of the contents.
+     */
+    public void store(String uuid, String path, File content, String checksum, long... revisions) {
+        try {
+            File blob = new File(blobs,checksum);
+            if(!blob.exists()) {
+                File tmp = File.createTempFile("blob",".tmp",blobs);
+                copy(new FileInputStream(content),new FileOutputStream(tmp));
+                rename(tmp,blob);
+                added(content.length());
+            }
+
+            for (long revision : revisions) {
+                File tmp = File.createTempFile("index",".tmp",index);
+                OutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(checksum.getBytes("US-ASCII"));
+                } finally {
+                    out.close();
+                }
+                rename(tmp,indexFile(uuid,path,revision));
+            }
+        } catch (IOException e) {
+            // it's just a cache
+        }
+    }
+
+    /**
+     * Updates the total size, and evicts the least recently used contents if we are over the limit.
+     */
+    private synchronized void added(long length) {
+        if(size<0) {
+            size = 0;
+            for (File f : listBlobs())
+                size += f.length();
+        } else {
+            size += length;
+        }
+        if(size<=maxSize)   return;
+
+        // evict until we are at 90% of the limit, so that we don't do this for every file
+        File[] files = listBlobs();
+        Arrays.sort(files,new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = a.lastModified(), y = b.lastModified();
+                return x<y ? -1 : x==y ? 0 : 1;
+            }
+        });
+        size = 0;
+        for (File f : files)
+            size += f.length();
+        Set<String> evicted = new HashSet<String>();
+        for (int i=0; i<files.length && size>maxSize*9/10; i++) {
+            long len = files[i].length();
+            if(files[i].delete()) {
+                size -= len;
+                evictions.incrementAndGet();
+                evicted.add(files[i].getName());
+            }
+        }
+
+        // and the index entries that point to them, which would otherwise pile up
+        File[] entries = index.listFiles();
+        if(entries==null)   return;
+        for (File f : entries) {
+            if(f.getName().endsWith(".tmp"))    continue;
+            try {
+                if(evicted.contains(readString(f)))
+                    f.delete();
+            } catch (IOException e) {
+                // deleted by someone else
+            }
+        }
+    }
+
+    private File[] listBlobs() {
+        File[] files = blobs.listFiles();
+        if(files==null)     return new File[0];
+        // leave temporary files being written by others
+        int n=0;
+        for (File f : files)
+            if(!f.getName().endsWith(".tmp"))
+                files[n++] = f;
+        File[] r = new File[n];
+        System.arraycopy(files,0,r,0,n);
+        return r;
+    }
+
+    private File indexFile(String uuid, String path, long revision) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            md.update((uuid+'\n'+path+'\n'+revision).getBytes("UTF-8"));
+            return new File(index,DirectorySync.toHex(md.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // MD5 is always there
+        } catch (IOException e) {
+            throw new Error(e); // UTF-8 is always there
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Content cache: "+hits+" hits, "+misses+" misses, "+evictions+" evictions";
+    }
+
+    private static String readString(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            byte[] buf = new byte[64];
+            int len = 0, n;
+            while(len<buf.length && (n=in.read(buf,len,buf.length-len))>0)
+                len += n;
+            return new String(buf,0,len,"US-ASCII").trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buf = new byte[8192];
+            int len;
+            while((len=in.read(buf))>=0)
+                out.write(buf,0,len);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if(from.renameTo(to))   return;
+        // Windows can't rename over an existing file
+        to.delete();
+        if(!from.renameTo(to)) {
+            from.delete();
+            throw new IOException("Failed to rename "+from+" to "+to);
+        }
+    }
+
+    private static ContentCache instance;
+
+    /**
+     * Gets the cache shared by all the wagons in this JVM, if the cache is enabled
+     * by the <tt>wagon.svn.contentCacheSize</tt> system property.
+     *
+     * @return
+     *      null if the cache is disabled.
+     */
+    public static synchronized ContentCache get() {
+        long max = Long.getLong("wagon.svn.contentCacheSize",0);
+        if(max<=0)  return null;
+        if(instance==null)
+            instance = new ContentCache(CacheDir.get("content"),max);
+        return instance;
+    }
+}
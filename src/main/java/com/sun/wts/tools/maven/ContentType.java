@@ -0,0 +1,113 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells compressed files, whose deltas against the previous version are rarely
+ * smaller than the files themselves, from texts that delta well.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class ContentType {
+    /**
+     * Checks if the file is already compressed, first by its extension,
+     * then by the magic number and the entropy of its first few kilobytes.
+     */
+    public static boolean isCompressed(File f) {
+        String name = f.getName();
+        int idx = name.lastIndexOf('.');
+        if(idx>=0 && COMPRESSED.contains(name.substring(idx+1).toLowerCase()))
+            return true;
+
+        byte[] buf = new byte[PROBE_SIZE];
+        int len;
+        try {
+            FileInputStream in = new FileInputStream(f);
+            try {
+                len = 0;
+                int n;
+                while(len<buf.length && (n=in.read(buf,len,buf.length-len))>0)
+                    len += n;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;   // let the caller find out
+        }
+        if(len<4)   return false;
+
+        if(buf[0]=='P' && buf[1]=='K' && buf[2]==3 && buf[3]==4)
+            return true;    // zip
+        if((buf[0]&0xFF)==0x1F && (buf[1]&0xFF)==0x8B)
+            return true;    // gzip
+
+        return entropy(buf,len)>MAX_ENTROPY;
+    }
+
+    /**
+     * Shannon entropy of the bytes, in bits per byte.
+     */
+    static double entropy(byte[] buf, int len) {
+        int[] counts = new int[256];
+        for (int i=0; i<len; i++)
+            counts[buf[i]&0xFF]++;
+        double e = 0;
+        for (int c : counts) {
+            if(c==0)    continue;
+            double p = (double)c/len;
+            e -= p*Math.log(p);
+        }
+        return e/Math.log(2);
+    }
+
+    private static final Set<String> COMPRESSED = new HashSet<String>(Arrays.asList(
+        "jar","war","ear","rar","sar","har","hpi","nbm","zip","gz","tgz","bz2","tbz","xz","7z","lzma",
+        "png","jpg","jpeg","gif","pack"));
+
+    private static final int PROBE_SIZE = 4096;
+
+    /**
+     * Texts are around 4-5 bits per byte. Compressed data is close to 8.
+     */
+    private static final double MAX_ENTROPY = 7.5;
+}
@@ -0,0 +1,200 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link CommitPlan.Sender} that computes delta windows on a pool of worker threads
+ * ahead of the thread that drives the commit editor.
+ *
+ * <p>
+ * {@link ISVNEditor} has to be driven from one thread, but reading files and
+ * computing deltas can be done in parallel. Workers prepare files in the order
+ * the plan sends them, and the editor thread just streams the prepared windows.
+ * The prepared data is kept in memory, so the workers stop getting ahead
+ * once they use up the memory budget. Files too big for the budget are sent
+ * directly from the editor thread.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DeltaPipeline implements CommitPlan.Sender {
+    private final DeltaSender sender;
+
+    private final SessionPool sessions;
+
+    private final ExecutorService workers;
+
+    /**
+     * Memory budget in kilobytes.
+     */
+    private final int budget;
+
+    private final Semaphore memory;
+
+    /**
+     * Files in the order of sending.
+     */
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<Job>();
+
+    private Thread feeder;
+
+    private static final class Job {
+        final CommitPlan.Item item;
+        /**
+         * null for a file that the editor thread needs to send by itself.
+         */
+        final Future<PreparedText> future;
+        final int cost;
+
+        Job(CommitPlan.Item item, Future<PreparedText> future, int cost) {
+            this.item = item;
+            this.future = future;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * @param sessions
+     *      Used by the workers to retrieve the base text of the files.
+     * @param threads
+     *      Number of worker threads.
+     * @param budget
+     *      Maximum amount of memory in bytes to be used for the prepared delta windows.
+     */
+    public DeltaPipeline(DeltaSender sender, SessionPool sessions, int threads, long budget) {
+        this.sender = sender;
+        this.sessions = sessions;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.budget = (int)Math.min(budget/1024,Integer.MAX_VALUE);
+        this.memory = new Semaphore(this.budget);
+    }
+
+    /**
+     * Starts preparing the given files in the background.
+     */
+    public void start(final List<CommitPlan.Item> items) {
+        feeder = new Thread("wagon-svn delta pipeline") {
+            @Override
+            public void run() {
+                try {
+                    for (final CommitPlan.Item item : items) {
+                        // the base text and the windows are both kept in memory
+                        long kb = item.source.length()*2/1024+1;
+                        if(kb>budget/2) {
+                            queue.put(new Job(item,null,0));
+                            continue;
+                        }
+
+                        int cost = (int)kb;
+                        memory.acquire(cost);
+                        queue.put(new Job(item,workers.submit(new Callable<PreparedText>() {
+                            public PreparedText call() throws Exception {
+                                return prepare(item);
+                            }
+                        }),cost));
+                    }
+                } catch (InterruptedException e) {
+                    // aborted
+                }
+            }
+        };
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    private PreparedText prepare(CommitPlan.Item item) throws SVNException, IOException, InterruptedException {
+        if(!sender.wantsBase(item.source,item.exists))
+            return sender.prepare(null,item.path,item.source,item.exists);
+
+        SVNRepository session = sessions.borrow();
+        try {
+            return sender.prepare(session,item.path,item.source,true);
+        } finally {
+            sessions.release(session);
+        }
+    }
+
+    public String send(ISVNEditor editor, String path, File source, boolean exists) throws SVNException, IOException {
+        Job job;
+        try {
+            job = queue.take();
+        } catch (InterruptedException e) {
+            throw (IOException)new IOException("Interrupted").initCause(e);
+        }
+        if(!job.item.path.equals(path))
+            throw new IllegalStateException("Expected "+job.item.path+" but got "+path);
+
+        if(job.future==null)
+            return sender.send(editor,path,source,exists);
+
+        try {
+            return sender.send(editor,path,job.future.get());
+        } catch (InterruptedException e) {
+            throw (IOException)new IOException("Interrupted").initCause(e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if(t instanceof SVNException)   throw (SVNException)t;
+            if(t instanceof IOException)    throw (IOException)t;
+            throw (IOException)new IOException("Failed to prepare "+path).initCause(t);
+        } finally {
+            memory.release(job.cost);
+        }
+    }
+
+    /**
+     * Stops all the background work.
+     */
+    public void shutdown() {
+        if(feeder!=null)
+            feeder.interrupt();
+        workers.shutdownNow();
+    }
+}
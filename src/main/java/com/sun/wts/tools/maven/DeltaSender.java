@@ -0,0 +1,336 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the contents of a file to the commit editor.
+ *
+ * <p>
+ * When the file already exists in the repository, we fetch the current text
+ * and send the difference against it, which is much smaller than the full text
+ * for files that barely change, such as the HTML files of a re-deployed site.
+ * The delta is only sent if it's actually smaller than the file itself.
+ *
+ * <p>
+ * Over svn:// and DAV, the windows of files that aren't already compressed are sent
+ * compressed with zlib (svndiff1), and those of compressed files, such as jars, are not.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DeltaSender {
+    /**
+     * Session located at the repository root, used to retrieve the base text.
+     */
+    private final SVNRepository repo;
+
+    /**
+     * Files bigger than this are always sent as full text,
+     * since the base text is kept in memory.
+     */
+    private final long maxDeltaSize;
+
+    /**
+     * Number of bytes that would have been sent as full text, and
+     * number of bytes actually sent as delta. For reporting.
+     */
+    private long fullBytes, deltaBytes;
+
+    private final TransferMetrics metrics;
+
+    /**
+     * True to compress the windows over DAV, which the DAV commit editor doesn't do by itself.
+     */
+    private final boolean davCompression;
+
+    /**
+     * Sends full texts, which is what most files are sent as.
+     */
+    private final FullTextSender fullText = new FullTextSender();
+
+    /**
+     * Generators are reused for all the files, since each holds its own window buffers.
+     */
+    private final Queue<SVNDeltaGenerator> generators = new ConcurrentLinkedQueue<SVNDeltaGenerator>();
+
+    /**
+     * Number of existing files sent in full without fetching their base text,
+     * because they are already compressed, and their total size. For reporting.
+     */
+    private final AtomicLong compressedFiles = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    /**
+     * Number of bytes saved by compressing the windows. For reporting.
+     */
+    private final AtomicLong compressionSaved = new AtomicLong();
+
+    public DeltaSender(SVNRepository repo, long maxDeltaSize, boolean davCompression, TransferMetrics metrics) {
+        this.repo = repo;
+        this.metrics = metrics;
+        this.maxDeltaSize = maxDeltaSize;
+        this.davCompression = davCompression;
+    }
+
+    /**
+     * Sends the contents of the file that's already opened or added in the editor.
+     *
+     * @param exists
+     *      True if the file already exists in the repository.
+     * @return
+     *      MD5 checksum of the file.
+     */
+    public String send(ISVNEditor editor, String path, File source, boolean exists) throws SVNException, IOException {
+        boolean compressed = ContentType.isCompressed(source);
+        if(wantsBase(source,exists,compressed,true)) {
+            Map props = new HashMap();
+            byte[] baseText = fetchBase(repo,path,props);
+            if(baseText!=null) {
+                long size = measureDelta(path,baseText,source);
+                if(size<source.length()) {
+                    count(source.length(),size);
+
+                    editor.applyTextDelta(path,(String)props.get(SVNProperty.CHECKSUM));
+                    SVNDeltaGenerator generator = borrowGenerator();
+                    FileInputStream fin = new FileInputStream(source);
+                    try {
+                        return generator.sendDelta(path,new ByteArrayInputStream(baseText),0,fin,compress(editor,compressed),true);
+                    } finally {
+                        fin.close();
+                        generators.offer(generator);
+                    }
+                }
+            }
+        }
+
+        count(source.length(),source.length());
+
+        editor.applyTextDelta(path,null);
+        return fullText.send(compress(editor,compressed),path,source);
+    }
+
+    /**
+     * Checks if it's worth fetching the base text of the file to send a delta.
+     * Compressed files almost never delta well, so fetching their base text
+     * just doubles the bytes moved.
+     */
+    public boolean wantsBase(File source, boolean exists) {
+        return wantsBase(source,exists,ContentType.isCompressed(source),false);
+    }
+
+    private boolean wantsBase(File source, boolean exists, boolean compressed, boolean count) {
+        if(!exists || source.length()>maxDeltaSize)
+            return false;
+        if(compressed) {
+            if(count) {
+                compressedFiles.incrementAndGet();
+                compressedBytes.addAndGet(source.length());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the delta windows of a file without sending them, so that this can
+     * be done by a thread other than the one that drives the editor.
+     *
+     * @param session
+     *      Session located at the repository root used to retrieve the base text.
+     *      Can be null if the file doesn't exist.
+     */
+    public PreparedText prepare(SVNRepository session, String path, File source, boolean exists) throws SVNException, IOException {
+        boolean compressed = ContentType.isCompressed(source);
+        if(wantsBase(source,exists,compressed,true)) {
+            Map props = new HashMap();
+            byte[] baseText = fetchBase(session,path,props);
+            if(baseText!=null) {
+                PreparedText t = new PreparedText();
+                long start = metrics.start();
+                SVNDeltaGenerator generator = borrowGenerator();
+                FileInputStream fin = new FileInputStream(source);
+                try {
+                    t.checksum = generator.sendDelta(path,new ByteArrayInputStream(baseText),0,fin,t,true);
+                } finally {
+                    fin.close();
+                    generators.offer(generator);
+                }
+                metrics.time("delta",start);
+                if(t.deltaSize<source.length()) {
+                    t.baseChecksum = (String)props.get(SVNProperty.CHECKSUM);
+                    t.fullSize = source.length();
+                    t.compressed = compressed;
+                    return t;
+                }
+            }
+        }
+
+        PreparedText t = new PreparedText();
+        long start = metrics.start();
+        t.checksum = fullText.send(t,path,source);
+        metrics.time("delta",start);
+        t.fullSize = t.deltaSize = source.length();
+        t.compressed = compressed;
+        return t;
+    }
+
+    /**
+     * Sends the delta computed by {@link #prepare(SVNRepository, String, File, boolean)}.
+     *
+     * @return
+     *      MD5 checksum of the file.
+     */
+    public String send(ISVNEditor editor, String path, PreparedText t) throws SVNException, IOException {
+        count(t.fullSize,t.deltaSize);
+        t.send(compress(editor,t.compressed),path);
+        return t.checksum;
+    }
+
+    /**
+     * Decides whether the windows sent to the editor are compressed, depending on the file
+     * and on what the editor does by itself.
+     *
+     * @param compressed
+     *      True if the file is already compressed.
+     */
+    private ISVNDeltaConsumer compress(ISVNEditor editor, boolean compressed) {
+        String protocol = repo.getLocation().getProtocol();
+        if(protocol.startsWith("svn"))
+            // the editor compresses if the server supports it, but we don't want that for jars
+            return new CompressingConsumer(editor,!compressed,false,compressionSaved);
+        if(protocol.startsWith("http") && davCompression && !compressed)
+            return new CompressingConsumer(editor,true,true,compressionSaved);
+        return editor;  // file:// applies the windows right away, so there's nothing to save
+    }
+
+    /**
+     * Retrieves the current text of the file.
+     *
+     * @return
+     *      null if the file can't be retrieved.
+     */
+    private byte[] fetchBase(SVNRepository session, String path, Map props) {
+        ByteArrayOutputStream base = new ByteArrayOutputStream();
+        try {
+            long start = metrics.start();
+            session.getFile(path,-1,props,base);
+            metrics.roundTrip("getFile",start);
+            metrics.received(base.size());
+            return base.toByteArray();
+        } catch (SVNException e) {
+            // perhaps deleted since we checked. just send the full text
+            return null;
+        }
+    }
+
+    private SVNDeltaGenerator borrowGenerator() {
+        SVNDeltaGenerator g = generators.poll();
+        return g!=null ? g : new SVNDeltaGenerator();
+    }
+
+    private void count(long full, long delta) {
+        fullBytes += full;
+        deltaBytes += delta;
+    }
+
+    /**
+     * Computes the delta without sending it, to find out how many bytes of new data it contains.
+     */
+    private long measureDelta(String path, byte[] baseText, File source) throws SVNException, IOException {
+        final long[] size = new long[1];
+        ISVNDeltaConsumer counter = new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {}
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                size[0] += diffWindow.getNewDataLength();
+                return null;
+            }
+
+            public void textDeltaEnd(String path) {}
+        };
+
+        long start = metrics.start();
+        SVNDeltaGenerator generator = borrowGenerator();
+        FileInputStream fin = new FileInputStream(source);
+        try {
+            generator.sendDelta(path,new ByteArrayInputStream(baseText),0,fin,counter,false);
+        } finally {
+            fin.close();
+            generators.offer(generator);
+        }
+        metrics.time("delta",start);
+        return size[0];
+    }
+
+    /**
+     * Number of bytes saved by sending deltas instead of full texts.
+     */
+    public long getBytesSaved() {
+        return fullBytes-deltaBytes;
+    }
+
+    /**
+     * Number of bytes saved by compressing the windows.
+     */
+    public long getCompressionSaved() {
+        return compressionSaved.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Saved "+getBytesSaved()+" bytes by sending deltas, "+compressionSaved+" bytes by compressing them, and about "
+            +compressedBytes+" bytes by not fetching the base of "+compressedFiles+" compressed files";
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Records what a deployment has committed, in a file in {@link CacheDir}, so that
+ * a deployment that failed mid-way can be retried without sending everything again.
+ *
+ * <p>
+ * A file is skipped only when its contents are the same as what the journal says
+ * is already committed to the same path. A journal is identified by the repository UUID
+ * and a deployment ID given by the user, and it's kept after the deployment succeeds,
+ * so running the same deployment again is a no-op.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DeployJournal {
+    private final File file;
+
+    /**
+     * From paths like "/trunk/repository/foo/bar.jar" to "checksum revision" strings.
+     */
+    private final Properties props = new Properties();
+
+    public DeployJournal(File file) {
+        this.file = file;
+        if(file.exists()) {
+            try {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    props.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                props.clear();  // start afresh
+            }
+        }
+    }
+
+    /**
+     * Checks if the given file is already committed to the given path.
+     *
+     * @return
+     *      the revision it was committed in, or -1 if it needs to be sent.
+     */
+    public synchronized long getCommitted(String path, File source) throws IOException {
+        String v = props.getProperty(path);
+        if(v==null)     return -1;
+        int idx = v.indexOf(' ');
+        if(!v.substring(0,idx).equals(DirectorySync.md5(source)))
+            return -1;
+        return Long.parseLong(v.substring(idx+1));
+    }
+
+    /**
+     * Records the files that are just committed, and writes the journal to the disk
+     * right away, for the next commit may never finish.
+     *
+     * @param checksums
+     *      From paths to the MD5 checksums of the files committed.
+     */
+    public synchronized void committed(Map<String,String> checksums, long revision) {
+        for (Map.Entry<String,String> e : checksums.entrySet())
+            props.setProperty(e.getKey(),e.getValue()+' '+revision);
+        save();
+    }
+
+    /**
+     * Writes to a temporary file first, so that a crash never leaves a partially written journal.
+     */
+    private void save() {
+        try {
+            file.getParentFile().mkdirs();
+            File tmp = File.createTempFile("journal",".tmp",file.getParentFile());
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out,"Files committed by a wagon-svn deployment");
+            } finally {
+                out.close();
+            }
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                if(!tmp.renameTo(file))
+                    tmp.delete();
+            }
+        } catch (IOException e) {
+            // the worst case is that the next retry sends the files again
+        }
+    }
+
+    /**
+     * Gets the journal of the given deployment.
+     */
+    public static DeployJournal get(String uuid, String deploymentId) {
+        return new DeployJournal(CacheDir.get("journal/"+uuid+'/'+deploymentId.replaceAll("[^A-Za-z0-9._-]","_")+".properties"));
+    }
+}
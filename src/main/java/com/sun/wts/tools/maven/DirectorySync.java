@@ -0,0 +1,287 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares a local directory with a directory in the repository, so that
+ * {@link SubversionWagon#putDirectory(File, String)} only needs to upload
+ * files that are new or modified.
+ *
+ * <p>
+ * The remote files and their MD5 checksums are all fetched in one depth-infinity
+ * status report, and compared with the checksums of the local files.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DirectorySync {
+    /**
+     * Session located at the repository root.
+     */
+    private final SVNRepository repo;
+
+    /**
+     * Path of the remote directory from the repository root, like "/trunk/www"
+     */
+    private final String remoteDir;
+
+    /**
+     * Files in the remote directory that we haven't matched with a local file yet,
+     * keyed by the path relative to {@link #remoteDir}, to their checksums.
+     * The checksum is null if the server didn't report it.
+     */
+    private final Map<String,String> remote = new HashMap<String,String>();
+
+    /**
+     * Directories in the remote directory, relative to {@link #remoteDir}.
+     */
+    private final Set<String> remoteDirs = new HashSet<String>();
+
+    private int skipped, uploaded, deleted, deletedDirs;
+
+    public DirectorySync(SVNRepository repo, String remoteDir) throws SVNException {
+        if(remoteDir.endsWith("/"))
+            remoteDir = remoteDir.substring(0,remoteDir.length()-1);
+        this.repo = repo;
+        this.remoteDir = remoteDir;
+        list();
+    }
+
+    private void list() throws SVNException {
+        if(repo.checkPath(remoteDir,-1)!=SVNNodeKind.DIR)
+            return; // the directory doesn't exist yet
+
+        SVNURL root = repo.getLocation();
+        repo.setLocation(root.appendPath(remoteDir,false),false);
+        try {
+            final long rev = repo.getLatestRevision();
+            repo.status(rev, null, true, new ISVNReporterBaton() {
+                public void report(ISVNReporter reporter) throws SVNException {
+                    reporter.setPath("",null,rev,true);
+                    reporter.finishReport();
+                }
+            }, new Lister());
+        } finally {
+            repo.setLocation(root,false);
+        }
+    }
+
+    /**
+     * Checks if the given local file needs to be uploaded.
+     *
+     * @param path
+     *      Path of the file relative to the directory, like "apidocs/index.html"
+     */
+    public boolean isModified(String path, File local) throws SVNException, IOException {
+        if(!remote.containsKey(path)) {
+            uploaded++;
+            return true;
+        }
+
+        String checksum = remote.remove(path);
+        if(checksum==null) {
+            // not in the report. ask for this one
+            Map props = new HashMap();
+            repo.getFile(remoteDir+'/'+path,-1,props,null);
+            checksum = (String)props.get(SVNProperty.CHECKSUM);
+        }
+        if(!md5(local).equals(checksum)) {
+            uploaded++;
+            return true;
+        }
+
+        skipped++;
+        return false;
+    }
+
+    /**
+     * Records the remote files and directories that don't exist locally to be deleted.
+     *
+     * <p>
+     * Files that aren't uploaded because they are excluded by default, like <tt>.cvsignore</tt>,
+     * still exist locally, so the local directory is scanned again without the default excludes.
+     * A directory that no longer exists locally is deleted as a whole, rather than left empty.
+     */
+    public void deleteRest(CommitPlan plan, File localDir) {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(localDir);
+        scanner.scan();
+        Set<String> localFiles = new HashSet<String>();
+        for (String f : scanner.getIncludedFiles())
+            localFiles.add(f.replace(File.separatorChar,'/'));
+        Set<String> localDirs = new HashSet<String>();
+        for (String d : scanner.getIncludedDirectories())
+            localDirs.add(d.replace(File.separatorChar,'/'));
+        localDirs.add("");
+
+        // the topmost directories that are gone. everything underneath goes with them
+        Set<String> gone = new HashSet<String>();
+        for (String d : remoteDirs)
+            if(!localDirs.contains(d) && localDirs.contains(parent(d)))
+                gone.add(d);
+
+        for (String path : remote.keySet()) {
+            if(localFiles.contains(path) || isUnder(path,gone))
+                continue;
+            plan.delete(remoteDir+'/'+path);
+            deleted++;
+        }
+        for (String d : gone) {
+            plan.delete(remoteDir+'/'+d);
+            deletedDirs++;
+        }
+        remote.clear();
+    }
+
+    private static String parent(String path) {
+        int idx = path.lastIndexOf('/');
+        return idx<0 ? "" : path.substring(0,idx);
+    }
+
+    private static boolean isUnder(String path, Set<String> dirs) {
+        for (String p=parent(path); p.length()>0; p=parent(p))
+            if(dirs.contains(p))
+                return true;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Uploaded "+uploaded+" files, skipped "+skipped+" unchanged files, deleted "+deleted+" files and "
+            +deletedDirs+" directories";
+    }
+
+    /**
+     * Computes the MD5 checksum of a file, in the format Subversion uses.
+     */
+    public static String md5(File f) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // MD5 is always there
+        }
+
+        byte[] buf = new byte[8192];
+        FileInputStream in = new FileInputStream(f);
+        try {
+            int len;
+            while((len=in.read(buf))>=0)
+                md.update(buf,0,len);
+        } finally {
+            in.close();
+        }
+        return toHex(md.digest());
+    }
+
+    static String toHex(byte[] digest) {
+        StringBuilder s = new StringBuilder();
+        for (byte b : digest) {
+            s.append(Character.forDigit((b>>4)&0xF,16));
+            s.append(Character.forDigit(b&0xF,16));
+        }
+        return s.toString();
+    }
+
+    /**
+     * {@link ISVNEditor} that receives the status report and collects the files and their checksums.
+     * Since the report is done against an empty working copy, everything is reported as added.
+     */
+    private final class Lister implements ISVNEditor {
+        private String relative(String path) {
+            return path.startsWith("/") ? path.substring(1) : path;
+        }
+
+        public void targetRevision(long revision) {}
+        public void openRoot(long revision) {}
+        public void deleteEntry(String path, long revision) {}
+        public void absentDir(String path) {}
+        public void absentFile(String path) {}
+        public void addDir(String path, String copyFromPath, long copyFromRevision) {
+            remoteDirs.add(relative(path));
+        }
+        public void openDir(String path, long revision) {}
+        public void changeDirProperty(String name, String value) {}
+        public void closeDir() {}
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) {
+            remote.put(relative(path),null);
+        }
+
+        public void openFile(String path, long revision) {}
+        public void changeFileProperty(String path, String name, String value) {}
+
+        public void closeFile(String path, String textChecksum) {
+            remote.put(relative(path),textChecksum);
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) {}
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {}
+
+        public SVNCommitInfo closeEdit() {
+            return null;
+        }
+
+        public void abortEdit() {}
+    }
+}
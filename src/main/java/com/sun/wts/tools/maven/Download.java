@@ -0,0 +1,238 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link OutputStream} that receives a file from the repository.
+ *
+ * <p>
+ * The data is written to a temporary file next to the destination, and
+ * only renamed into place once it's complete and its MD5 checksum matches
+ * what the server says it should be. So a failed transfer never leaves
+ * a truncated file at the destination, and the previous file stays until
+ * the new one takes its place.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class Download extends OutputStream {
+    private final File destination;
+
+    private final File tmp;
+
+    private final FileOutputStream fos;
+
+    private final FileChannel channel;
+
+    /**
+     * Borrowed from {@link #POOL}, and returned when the download is committed or aborted.
+     */
+    private ByteBuffer buf;
+
+    private final MessageDigest md5;
+
+    private long size;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private boolean done;
+
+    private String checksum;
+
+    public Download(File destination) throws IOException {
+        this.destination = destination;
+        File dir = destination.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        // the prefix needs to be at least 3 characters long
+        tmp = File.createTempFile("wagon-"+destination.getName(),".tmp",dir);
+        fos = new FileOutputStream(tmp);
+        channel = fos.getChannel();
+        buf = POOL.poll();
+        if(buf==null)
+            buf = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // MD5 is always there
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(!buf.hasRemaining())
+            drain();
+        buf.put((byte)b);
+        md5.update((byte)b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        md5.update(b,off,len);
+        size += len;
+        while(len>0) {
+            if(!buf.hasRemaining())
+                drain();
+            int n = Math.min(len,buf.remaining());
+            buf.put(b,off,n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while(buf.hasRemaining())
+            channel.write(buf);
+        buf.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the file is closed by commit or abort
+    }
+
+    /**
+     * Receives everything from the given stream, then closes it.
+     */
+    public void transfer(InputStream in) throws IOException {
+        try {
+            byte[] buf = new byte[8192];
+            int len;
+            while((len=in.read(buf))>=0)
+                write(buf,0,len);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * MD5 checksum of the received file. Available after {@link #commit(String)}.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Number of bytes received so far.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Transfer rate in bytes/sec so far.
+     */
+    public long getRate() {
+        long t = System.currentTimeMillis()-startTime;
+        return size*1000/Math.max(t,1);
+    }
+
+    /**
+     * Verifies the checksum and moves the file into the destination.
+     *
+     * @param expectedChecksum
+     *      MD5 checksum that the server reported, or null if unknown.
+     */
+    public void commit(String expectedChecksum) throws IOException {
+        drain();
+        done = true;
+        fos.close();
+        release();
+
+        checksum = DirectorySync.toHex(md5.digest());
+        if(expectedChecksum!=null && !expectedChecksum.equals(checksum)) {
+            tmp.delete();
+            throw new IOException("Checksum mismatch for "+destination+": expected "+expectedChecksum+" but got "+checksum);
+        }
+
+        if(!tmp.renameTo(destination)) {
+            // Windows can't rename over an existing file.
+            // move it aside rather than deleting it, so that it's still there if the rename fails
+            File old = new File(tmp.getPath()+".old");
+            if(!destination.renameTo(old)) {
+                tmp.delete();
+                throw new IOException("Failed to rename "+tmp+" to "+destination);
+            }
+            if(!tmp.renameTo(destination)) {
+                old.renameTo(destination);
+                tmp.delete();
+                throw new IOException("Failed to rename "+tmp+" to "+destination);
+            }
+            old.delete();
+        }
+    }
+
+    /**
+     * Discards the partially received file, unless it's already committed.
+     */
+    public void abort() {
+        if(done)    return;
+        done = true;
+        try {
+            fos.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        release();
+        tmp.delete();
+    }
+
+    private void release() {
+        buf.clear();
+        POOL.offer(buf);
+        buf = null;
+    }
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    /**
+     * Buffers of finished downloads, reused by the next ones. Heap buffers, since
+     * direct ones are slow to allocate and only freed when they are garbage collected.
+     */
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+}
@@ -0,0 +1,277 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Remembers the revision at which each local file was downloaded, so that
+ * {@link SubversionWagon#getIfNewer(String, File, long)} can tell that a file
+ * hasn't changed without asking the server about each file.
+ *
+ * <p>
+ * Instead, we check the latest revision once, and retrieve the log of the
+ * changes since the oldest revision we need to know about. Any file that
+ * doesn't show up in the log is up to date.
+ *
+ * <p>
+ * Files that are deleted or modified locally are forgotten when the index is saved,
+ * and so are the oldest downloads beyond {@link #MAX_ENTRIES}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FreshnessIndex {
+    private final File file;
+
+    /**
+     * Path of the wagon root from the repository root, like "/trunk/repository".
+     * We only need the log of the changes underneath.
+     */
+    private final String logPath;
+
+    /**
+     * From absolute local paths to "revision timestamp remotePath".
+     */
+    private final Properties props = new Properties();
+
+    private boolean dirty;
+
+    /**
+     * Latest revision of the repository, or -1 if we haven't checked yet.
+     */
+    private long latest = -1;
+
+    /**
+     * The log we've retrieved covers from this revision to {@link #latest}.
+     */
+    private long logFrom;
+
+    /**
+     * Paths changed in the log we've retrieved, to the last revision they are changed.
+     */
+    private final Map<String,Long> modified = new HashMap<String,Long>();
+
+    /**
+     * Paths added, deleted, or replaced in the log we've retrieved, to the last revision
+     * that happened, since that affects everything underneath.
+     */
+    private final Map<String,Long> replaced = new HashMap<String,Long>();
+
+    public FreshnessIndex(File file, String logPath) {
+        this.file = file;
+        this.logPath = logPath;
+        if(file.exists()) {
+            try {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    props.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // start afresh
+            }
+        }
+    }
+
+    /**
+     * Records that the local file is downloaded from the given path at the given revision.
+     *
+     * @param path
+     *      Path from the repository root, like "/trunk/repository/foo/maven-metadata.xml"
+     */
+    public synchronized void fetched(File local, String path, long revision) {
+        props.setProperty(local.getAbsolutePath(),revision+" "+local.lastModified()+" "+path);
+        dirty = true;
+    }
+
+    /**
+     * Checks if the local file is known to be identical to the file in the repository.
+     *
+     * @param session
+     *      Used to talk to the server, if we need to.
+     * @param path
+     *      Path from the repository root, like "/trunk/repository/foo/maven-metadata.xml"
+     * @param readRevision
+     *      The revision we are reading from, or -1 to read from HEAD.
+     * @return
+     *      false if the file might have changed.
+     */
+    public boolean isUpToDate(SVNRepository session, File local, String path, long readRevision) throws SVNException {
+        String v = props.getProperty(local.getAbsolutePath());
+        if(v==null)     return false;
+        String[] tokens = v.split(" ",3);
+        long revision = Long.parseLong(tokens[0]);
+        if(!tokens[2].equals(path) || !local.exists() || local.lastModified()!=Long.parseLong(tokens[1]))
+            return false;   // not the file we downloaded
+
+        // talk to the server without holding the lock, so that other downloads aren't held up
+        long latest, logFrom;
+        synchronized(this) {
+            latest = this.latest;
+            logFrom = this.logFrom;
+        }
+        if(latest<0) {
+            latest = readRevision>=0 ? readRevision : session.getLatestRevision();
+            synchronized(this) {
+                if(this.latest<0) {
+                    this.latest = latest;
+                    this.logFrom = latest+1;
+                }
+                latest = this.latest;
+                logFrom = this.logFrom;
+            }
+        }
+        if(revision==latest)
+            return true;
+        if(revision>latest)
+            return false;   // downloaded from a later revision than what we are reading from
+
+        if(revision+1<logFrom) {
+            // retrieve the part of the log that we don't have yet.
+            // it ends where the log we have starts, so the two stay contiguous
+            final Map<String,Long> m = new HashMap<String,Long>();
+            final Map<String,Long> rp = new HashMap<String,Long>();
+            session.log(new String[]{logPath},revision+1,logFrom-1,true,false,new ISVNLogEntryHandler() {
+                public void handleLogEntry(SVNLogEntry e) throws SVNException {
+                    for (Object o : e.getChangedPaths().values()) {
+                        SVNLogEntryPath p = (SVNLogEntryPath) o;
+                        record(p.getType()=='M' ? m : rp, p.getPath(), e.getRevision());
+                    }
+                }
+            });
+            synchronized(this) {
+                for (Map.Entry<String,Long> e : m.entrySet())
+                    record(modified,e.getKey(),e.getValue());
+                for (Map.Entry<String,Long> e : rp.entrySet())
+                    record(replaced,e.getKey(),e.getValue());
+                this.logFrom = Math.min(this.logFrom,revision+1);
+            }
+        }
+
+        synchronized(this) {
+            if(changedAfter(modified.get(path),revision))
+                return false;
+            for (String p=path; p.length()>0; p=p.substring(0,p.lastIndexOf('/')))
+                if(changedAfter(replaced.get(p),revision))
+                    return false;
+            return true;
+        }
+    }
+
+    private static void record(Map<String,Long> m, String path, long revision) {
+        Long r = m.get(path);
+        if(r==null || r<revision)
+            m.put(path,revision);
+    }
+
+    private static boolean changedAfter(Long changed, long revision) {
+        return changed!=null && changed>revision;
+    }
+
+    /**
+     * Writes the index back to the disk, if it's modified.
+     */
+    public synchronized void save() {
+        if(!dirty)  return;
+        prune();
+        try {
+            file.getParentFile().mkdirs();
+            File tmp = File.createTempFile("fetched",".tmp",file.getParentFile());
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out,"Files downloaded by wagon-svn");
+            } finally {
+                out.close();
+            }
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                if(!tmp.renameTo(file))
+                    tmp.delete();
+            }
+            dirty = false;
+        } catch (IOException e) {
+            // it's just a cache
+        }
+    }
+
+    /**
+     * Forgets the files that are no longer what we downloaded,
+     * and then the oldest downloads beyond {@link #MAX_ENTRIES}.
+     */
+    private void prune() {
+        List<Long> revisions = new ArrayList<Long>();
+        for (Iterator itr=props.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry e = (Map.Entry)itr.next();
+            String[] tokens = ((String)e.getValue()).split(" ",3);
+            File local = new File((String)e.getKey());
+            if(tokens.length<3 || local.lastModified()!=Long.parseLong(tokens[1]))
+                itr.remove();   // deleted or modified, which lastModified() tells since it's 0 for a missing file
+            else
+                revisions.add(Long.parseLong(tokens[0]));
+        }
+        if(revisions.size()<=MAX_ENTRIES)   return;
+
+        Collections.sort(revisions);
+        long min = revisions.get(revisions.size()-MAX_ENTRIES);
+        for (Iterator itr=props.values().iterator(); itr.hasNext();) {
+            String v = (String)itr.next();
+            if(Long.parseLong(v.substring(0,v.indexOf(' ')))<min)
+                itr.remove();
+        }
+    }
+
+    /**
+     * Maximum number of files remembered. Each connection loads them all.
+     */
+    private static final int MAX_ENTRIES = 20000;
+}
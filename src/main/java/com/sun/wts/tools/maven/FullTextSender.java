@@ -0,0 +1,159 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sends the full text of a file as delta windows, reading it through a {@link FileChannel}
+ * into buffers that are reused for every window of every file.
+ *
+ * <p>
+ * {@link org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator} reads through a stream and copies each
+ * window a few times, which adds up for multi-gigabyte files. A full text doesn't need any of that;
+ * each window is just one "new data" instruction followed by the data. The consumer has to be
+ * done with a window when {@link ISVNDeltaConsumer#textDeltaChunk(String, SVNDiffWindow)} returns,
+ * which is what the generator expects, too.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FullTextSender {
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * Sends the windows and ends the delta. The caller needs to call
+     * {@link ISVNDeltaConsumer#applyTextDelta(String, String)} first.
+     *
+     * @return
+     *      MD5 checksum of the file.
+     */
+    public String send(ISVNDeltaConsumer consumer, String path, File source) throws SVNException, IOException {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // MD5 is always there
+        }
+
+        ByteBuffer buf = pool.poll();
+        if(buf==null)
+            buf = ByteBuffer.allocate(HEADER+WINDOW_SIZE);
+
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileChannel ch = in.getChannel();
+            long offset = 0;
+            while(true) {
+                buf.clear();
+                buf.position(HEADER);
+                while(buf.hasRemaining() && ch.read(buf)>=0)
+                    ;
+                int len = buf.position()-HEADER;
+                if(len==0)  break;
+                md5.update(buf.array(),buf.arrayOffset()+HEADER,len);
+
+                // the instruction goes right in front of the data
+                int start = writeInstruction(buf.array(),buf.arrayOffset()+HEADER,len)-buf.arrayOffset();
+                SVNDiffWindow w = new SVNDiffWindow(0,0,len,HEADER-start,len);
+                buf.position(start);
+                w.setData(buf);
+                OutputStream os = consumer.textDeltaChunk(path,w);
+                if(os!=null)    os.close();
+                offset += len;
+
+                if(len<WINDOW_SIZE)   break;  // EOF
+            }
+            if(offset==0) {
+                // svn expects at least one window, even for an empty file
+                OutputStream os = consumer.textDeltaChunk(path,SVNDiffWindow.EMPTY);
+                if(os!=null)    os.close();
+            }
+        } finally {
+            in.close();
+            pool.offer(buf);
+        }
+
+        consumer.textDeltaEnd(path);
+        return DirectorySync.toHex(md5.digest());
+    }
+
+    /**
+     * Writes the svndiff "copy from new data" instruction for the given length,
+     * so that it ends right at <tt>end</tt>.
+     *
+     * @return
+     *      Index where the instruction starts.
+     */
+    private static int writeInstruction(byte[] buf, int end, int len) {
+        if(len<64) {
+            buf[end-1] = (byte)(0x80|len);
+            return end-1;
+        }
+        // length follows the opcode as a big-endian base-128 number
+        int i = end;
+        buf[--i] = (byte)(len&0x7F);
+        len >>>= 7;
+        while(len>0) {
+            buf[--i] = (byte)(0x80|(len&0x7F));
+            len >>>= 7;
+        }
+        buf[--i] = (byte)0x80;
+        return i;
+    }
+
+    /**
+     * Room in front of the data for the instruction.
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Same as {@link org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator}.
+     */
+    private static final int WINDOW_SIZE = 100*1024;
+}
@@ -48,6 +48,12 @@ public class JavaNetWagon extends SubversionWagon {
                 throw new ConnectionException("Unable to connect to "+getSubversionURL()+" You need to create "+getDotJavaNetFile()+" See https://javanettasks.dev.java.net/nonav/maven/config.html",e);
         } catch (SVNException e) {
             throw new ConnectionException("Unable to connect to "+getSubversionURL(),e);
+        } finally {
+            SVNURL failed = AuthenticationProvider.FAILED.get();
+            if(failed!=null) {
+                AuthenticationProvider.FAILED.remove();
+                fireTransferDebug("Subversion authentication failed:"+failed);
+            }
         }
     }
 
@@ -55,34 +61,13 @@ public class JavaNetWagon extends SubversionWagon {
     protected ISVNProxyManager getProxyManager(SVNURL url) {
         Properties properties = loadProperties();
         if(properties!=null) {
-            final String proxyServer = properties.getProperty("proxyServer");
-            final String proxyPort = properties.getProperty("proxyPort");
+            String proxyServer = properties.getProperty("proxyServer");
+            String proxyPort = properties.getProperty("proxyPort");
             if(proxyServer!=null) {
                 StringBuilder debugMessage = new StringBuilder("proxyServer = " + proxyServer);
                 debugMessage.append(proxyPort == null ? "" : ", proxyPort = " + proxyPort);
                 fireTransferDebug(debugMessage.toString());
-                return new ISVNProxyManager() {
-                    public String getProxyHost() {
-                        return proxyServer;
-                    }
-
-                    public int getProxyPort() {
-                        if(proxyPort!=null)
-                            return Integer.valueOf(proxyPort);
-                        return 8080;
-                    }
-
-                    public String getProxyUserName() {
-                        return null;
-                    }
-
-                    public String getProxyPassword() {
-                        return null;
-                    }
-
-                    public void acknowledgeProxyContext(boolean accepted, SVNErrorMessage errorMessage) {
-                    }
-                };
+                return new ProxyManager(proxyServer,proxyPort!=null ? Integer.parseInt(proxyPort) : 8080);
             }
         }
         return super.getProxyManager(url);
@@ -90,35 +75,96 @@ public class JavaNetWagon extends SubversionWagon {
 
     @Override
     protected ISVNAuthenticationProvider createAuthenticationProvider() {
-        return new ISVNAuthenticationProvider() {
-            public SVNAuthentication requestClientAuthentication(String kind, SVNURL url, String realm, SVNErrorMessage errorMessage, SVNAuthentication previousAuth, boolean authMayBeStored) {
-                if(previousAuth!=null) {
-                    fireTransferDebug("Subversion authentication failed:"+url);
-                    // svnkit will keep calling this method as long as we don't return null, so unless we do this
-                    // this becomes infinite loop.
-                    return null;
-                }
-
-                // if ~/.java.net, trust that the most
-                Properties props = loadProperties();
-                if(props!=null)
-                    return new SVNPasswordAuthentication(
-                            props.getProperty("userName"),
-                            props.getProperty("password"),false);
-
-                // fall back to ~/.m2/settings.xml
-                AuthenticationInfo auth = getAuthenticationInfo();
-                // maven always seems to give you non-null auth, even if nothing is configured in your settings.xml
-                if(auth!=null && auth.getPassword()!=null)
-                    return new SVNPasswordAuthentication(auth.getUserName(),auth.getPassword(),false);
+        return new AuthenticationProvider(loadProperties(),getAuthenticationInfo());
+    }
+
+    /**
+     * Credentials and proxy come from ~/.java.net, if it's there.
+     */
+    @Override
+    protected String getAuthenticationKey() {
+        String key = super.getAuthenticationKey();
+        Properties props = loadProperties();
+        if(props==null)     return key;
+        return key+'\n'+props.getProperty("userName")+'\n'+SessionCache.digest(props.getProperty("password"))
+            +'\n'+props.getProperty("proxyServer")+':'+props.getProperty("proxyPort");
+    }
+
+    /**
+     * Proxy configured in ~/.java.net.
+     */
+    private static final class ProxyManager implements ISVNProxyManager {
+        private final String host;
+        private final int port;
+
+        ProxyManager(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getProxyHost() {
+            return host;
+        }
+
+        public int getProxyPort() {
+            return port;
+        }
+
+        public String getProxyUserName() {
+            return null;
+        }
 
+        public String getProxyPassword() {
+            return null;
+        }
+
+        public void acknowledgeProxyContext(boolean accepted, SVNErrorMessage errorMessage) {
+        }
+    }
+
+    /**
+     * Uses the credentials in ~/.java.net, or else those in ~/.m2/settings.xml.
+     */
+    private static final class AuthenticationProvider implements ISVNAuthenticationProvider {
+        private final Properties props;
+        private final AuthenticationInfo auth;
+
+        AuthenticationProvider(Properties props, AuthenticationInfo auth) {
+            this.props = props;
+            this.auth = auth;
+        }
+
+        public SVNAuthentication requestClientAuthentication(String kind, SVNURL url, String realm, SVNErrorMessage errorMessage, SVNAuthentication previousAuth, boolean authMayBeStored) {
+            if(previousAuth!=null) {
+                // this provider is shared by wagons, so leave it to the one on this thread to report
+                FAILED.set(url);
+                // svnkit will keep calling this method as long as we don't return null, so unless we do this
+                // this becomes infinite loop.
                 return null;
             }
 
-            public int acceptServerAuthentication(SVNURL url, String realm, Object certificate, boolean resultMayBeStored) {
-                return ACCEPTED_TEMPORARY;
-            }
-        };
+            // if ~/.java.net, trust that the most
+            if(props!=null)
+                return new SVNPasswordAuthentication(
+                        props.getProperty("userName"),
+                        props.getProperty("password"),false);
+
+            // fall back to ~/.m2/settings.xml
+            // maven always seems to give you non-null auth, even if nothing is configured in your settings.xml
+            if(auth!=null && auth.getPassword()!=null)
+                return new SVNPasswordAuthentication(auth.getUserName(),auth.getPassword(),false);
+
+            return null;
+        }
+
+        public int acceptServerAuthentication(SVNURL url, String realm, Object certificate, boolean resultMayBeStored) {
+            return ACCEPTED_TEMPORARY;
+        }
+
+        /**
+         * URL whose authentication failed on this thread, until the wagon reports it.
+         */
+        static final ThreadLocal<SVNURL> FAILED = new ThreadLocal<SVNURL>();
     }
 
     protected Properties loadProperties() {
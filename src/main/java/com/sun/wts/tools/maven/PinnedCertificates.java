@@ -0,0 +1,140 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Fingerprints of the server certificates the user accepted permanently, in a file in {@link CacheDir},
+ * so that later connections trust them with a lookup instead of asking again.
+ *
+ * <p>
+ * Once a certificate is pinned for a server, a different certificate from that server
+ * is not accepted silently. When the server legitimately renews its certificate, list it in
+ * the <tt>wagon.svn.repinCertificates</tt> system property, and whatever certificate it presents
+ * next is pinned instead. Removing its line from the file un-pins it.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class PinnedCertificates {
+    private final File file;
+
+    /**
+     * From "host:port" to the SHA-1 fingerprint of the certificate. Lazily loaded.
+     */
+    private Properties props;
+
+    public PinnedCertificates(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the fingerprint pinned for the given server.
+     *
+     * @return
+     *      null if none is pinned.
+     */
+    public synchronized String get(String site) {
+        return load().getProperty(site);
+    }
+
+    public synchronized void pin(String site, String fingerprint) {
+        load().setProperty(site,fingerprint);
+        save();
+    }
+
+    /**
+     * Checks if the user asked to replace the certificate pinned for the given server.
+     *
+     * @param site
+     *      "host:port", as listed in the comma-separated <tt>wagon.svn.repinCertificates</tt> system property.
+     */
+    public static boolean isRepinRequested(String site) {
+        String sites = System.getProperty("wagon.svn.repinCertificates");
+        if(sites==null)     return false;
+        for (String s : sites.split(","))
+            if(s.trim().equals(site))
+                return true;
+        return false;
+    }
+
+    private Properties load() {
+        if(props==null) {
+            props = new Properties();
+            if(file.exists()) {
+                try {
+                    FileInputStream in = new FileInputStream(file);
+                    try {
+                        props.load(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    // start afresh
+                }
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Writes to a temporary file first, so that other JVMs never see a partially written file.
+     */
+    private void save() {
+        try {
+            File tmp = File.createTempFile("pinned",".tmp",file.getParentFile());
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out,"Server certificates accepted permanently through wagon-svn");
+            } finally {
+                out.close();
+            }
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                if(!tmp.renameTo(file))
+                    tmp.delete();
+            }
+        } catch (IOException e) {
+            // the user will be asked again next time
+        }
+    }
+
+    public static final PinnedCertificates INSTANCE = new PinnedCertificates(CacheDir.get("pinned-certificates.properties"));
+}
@@ -0,0 +1,102 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delta windows of a file computed ahead of time, so that they can be
+ * computed by another thread than the one driving the commit editor.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class PreparedText implements ISVNDeltaConsumer {
+    private final List<SVNDiffWindow> windows = new ArrayList<SVNDiffWindow>();
+
+    /**
+     * Checksum of the base text the delta is computed against, or null for the full text.
+     */
+    String baseChecksum;
+
+    /**
+     * MD5 checksum of the file.
+     */
+    String checksum;
+
+    /**
+     * Size of the file, and the number of new data bytes in the delta.
+     */
+    long fullSize, deltaSize;
+
+    /**
+     * True if the file is already compressed.
+     */
+    boolean compressed;
+
+    public void applyTextDelta(String path, String baseChecksum) {
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+        // the generator reuses its buffer, so we need our own copy
+        windows.add(diffWindow.clone(ByteBuffer.allocate(diffWindow.getDataLength())));
+        deltaSize += diffWindow.getNewDataLength();
+        return null;
+    }
+
+    public void textDeltaEnd(String path) {
+    }
+
+    /**
+     * Replays the captured delta to the editor.
+     */
+    void send(ISVNDeltaConsumer consumer, String path) throws SVNException, IOException {
+        consumer.applyTextDelta(path,baseChecksum);
+        for (SVNDiffWindow w : windows) {
+            OutputStream os = consumer.textDeltaChunk(path,w);
+            if(os!=null)    os.close();
+        }
+        consumer.textDeltaEnd(path);
+        windows.clear();
+    }
+}
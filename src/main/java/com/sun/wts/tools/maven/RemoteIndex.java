@@ -0,0 +1,278 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Directory listings of a repository, kept in {@link CacheDir} across builds,
+ * so that listing a directory with thousands of versions is a local lookup.
+ *
+ * <p>
+ * All the listings are of the same revision. When we bring the index up to date,
+ * we replay the log since that revision and discard the listings of the directories
+ * that had something added or deleted. Those are listed again when they are next needed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RemoteIndex {
+    private final File file;
+
+    /**
+     * From directory paths like "/trunk/repository/foo" to the names of the children,
+     * separated by '\n', with '/' at the end of directory names. {@link #MISSING} if the
+     * directory doesn't exist.
+     */
+    private final Properties listings = new Properties();
+
+    /**
+     * Revision of the listings. -1 if not known.
+     */
+    private long revision = -1;
+
+    private boolean dirty;
+
+    public RemoteIndex(File file) {
+        this.file = file;
+        if(file.exists()) {
+            try {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    listings.load(in);
+                } finally {
+                    in.close();
+                }
+                String r = (String)listings.remove(REVISION);
+                if(r!=null)
+                    revision = Long.parseLong(r);
+            } catch (IOException e) {
+                listings.clear();  // start afresh
+            } catch (NumberFormatException e) {
+                listings.clear();
+            }
+        }
+    }
+
+    /**
+     * Revision of the listings in this index, or -1 if it's never been updated.
+     */
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Brings the index up to the latest revision.
+     */
+    public synchronized void update(SVNRepository session) throws SVNException {
+        long latest = session.getLatestRevision();
+        if(revision==latest)    return;
+
+        if(revision<0 || latest-revision>MAX_LOG) {
+            // too far behind. faster to start over
+            listings.clear();
+        } else {
+            try {
+                session.log(new String[]{"/"},revision+1,latest,true,false,new ISVNLogEntryHandler() {
+                    public void handleLogEntry(SVNLogEntry e) {
+                        for (Object o : e.getChangedPaths().values()) {
+                            SVNLogEntryPath p = (SVNLogEntryPath) o;
+                            if(p.getType()=='M')    continue;   // doesn't change any listing
+                            // a copy brings in a whole subtree, where we may remember MISSING or old listings
+                            invalidate(p.getPath(),p.getType()!='A' || p.getCopyPath()!=null);
+                        }
+                    }
+                });
+            } catch (SVNException e) {
+                // can't tell what's changed. maybe we aren't allowed to read the log of the whole repository
+                listings.clear();
+            }
+        }
+        revision = latest;
+        dirty = true;
+    }
+
+    /**
+     * Discards the listing of the parent of the given path, and if the path is deleted, replaced,
+     * or copied from elsewhere, listings underneath, too.
+     */
+    private void invalidate(String path, boolean deep) {
+        int idx = path.lastIndexOf('/');
+        listings.remove(idx<=0 ? "/" : path.substring(0,idx));
+        listings.remove(path);
+        if(deep) {
+            String prefix = path+'/';
+            for (Iterator itr=listings.keySet().iterator(); itr.hasNext();)
+                if(((String)itr.next()).startsWith(prefix))
+                    itr.remove();
+        }
+    }
+
+    /**
+     * Lists up the children of a directory. Directory names end with '/'.
+     *
+     * @param session
+     *      Used to list the directory if it's not in the index.
+     * @param dir
+     *      Path from the repository root, like "/trunk/repository/foo".
+     * @return
+     *      null if the directory doesn't exist.
+     */
+    public synchronized List<String> list(SVNRepository session, String dir) throws SVNException {
+        if(dir.length()>1 && dir.endsWith("/"))
+            dir = dir.substring(0,dir.length()-1);
+
+        String v = listings.getProperty(dir);
+        if(v==null) {
+            List<String> children = list(session,dir,revision);
+            if(children==null) {
+                v = MISSING;
+            } else {
+                StringBuilder buf = new StringBuilder();
+                for (String c : children) {
+                    if(buf.length()>0)  buf.append('\n');
+                    buf.append(c);
+                }
+                v = buf.toString();
+            }
+            listings.setProperty(dir,v);
+            dirty = true;
+        }
+
+        if(v.equals(MISSING))   return null;
+        if(v.length()==0)       return new ArrayList<String>();
+        return new ArrayList<String>(Arrays.asList(v.split("\n")));
+    }
+
+    /**
+     * Lists up the children of a directory at the given revision, bypassing the index.
+     *
+     * @return
+     *      null if the directory doesn't exist.
+     */
+    public static List<String> list(SVNRepository session, String dir, long revision) throws SVNException {
+        if(session.checkPath(dir,revision)!=SVNNodeKind.DIR)
+            return null;
+        List<String> r = new ArrayList<String>();
+        for (Object o : session.getDir(dir,revision,null,(Collection)null)) {
+            SVNDirEntry e = (SVNDirEntry) o;
+            r.add(e.getKind()==SVNNodeKind.DIR ? e.getName()+'/' : e.getName());
+        }
+        return r;
+    }
+
+    /**
+     * Checks if a file or a directory exists.
+     */
+    public boolean exists(SVNRepository session, String path) throws SVNException {
+        if(path.length()>1 && path.endsWith("/"))
+            path = path.substring(0,path.length()-1);
+        int idx = path.lastIndexOf('/');
+        List<String> children = list(session,idx<=0 ? "/" : path.substring(0,idx));
+        if(children==null)  return false;
+        String name = path.substring(idx+1);
+        return children.contains(name) || children.contains(name+'/');
+    }
+
+    /**
+     * Writes the index back to the disk, if it's modified.
+     */
+    public synchronized void save() {
+        if(!dirty)  return;
+        try {
+            file.getParentFile().mkdirs();
+            File tmp = File.createTempFile("index",".tmp",file.getParentFile());
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                listings.setProperty(REVISION,String.valueOf(revision));
+                listings.store(out,"Directory listings cached by wagon-svn");
+            } finally {
+                listings.remove(REVISION);
+                out.close();
+            }
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                if(!tmp.renameTo(file))
+                    tmp.delete();
+            }
+            dirty = false;
+        } catch (IOException e) {
+            // it's just a cache
+        }
+    }
+
+    private static final Map<String,RemoteIndex> INDICES = new HashMap<String,RemoteIndex>();
+
+    /**
+     * Gets the index of the given repository, shared by all the wagons in this JVM.
+     */
+    public static synchronized RemoteIndex get(String uuid) {
+        RemoteIndex i = INDICES.get(uuid);
+        if(i==null)
+            INDICES.put(uuid,i=new RemoteIndex(CacheDir.get("index/"+uuid+".properties")));
+        return i;
+    }
+
+    /**
+     * Key that stores the revision. Not a valid path.
+     */
+    private static final String REVISION = "revision";
+
+    private static final String MISSING = "/";
+
+    /**
+     * If the index is behind by more revisions than this, we start over instead of replaying the log.
+     */
+    private static final long MAX_LOG = 10000;
+}
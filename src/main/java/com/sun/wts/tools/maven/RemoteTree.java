@@ -0,0 +1,479 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory picture of the remote directory tree, so that we don't have to
+ * ask the server whether a path exists every time we put a file.
+ *
+ * <p>
+ * The tree under the wagon root is filled either lazily one directory at a time (the default),
+ * or by one depth-infinity status report, which is faster when the tree is small enough
+ * to be listed as a whole.
+ * Paths added by the commit editor are recorded in the same tree, since
+ * the query session can't see them until the commit is done.
+ *
+ * <p>
+ * A deployment of a big site puts tens of thousands of files, so the tree is kept compact.
+ * Names are shared between nodes, each node is a few fields, and looking up a path
+ * that's in the tree doesn't create any objects.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RemoteTree {
+    /**
+     * Session that's located at the repository root.
+     */
+    private final SVNRepository repo;
+
+    private final TransferMetrics metrics;
+
+    /**
+     * Path from the repository root to the wagon root, like "trunk/repository"
+     */
+    private final String rootPath;
+
+    /**
+     * True to list directories one at a time as needed.
+     */
+    private boolean lazy;
+
+    private final Node root = new Node(DIR|REMOTE);
+
+    /**
+     * True once we've tried to fill the tree under {@link #rootPath}.
+     */
+    private boolean prefetched;
+
+    /**
+     * One copy of each name in the tree.
+     */
+    private final Map<String,String> names = new HashMap<String,String>();
+
+    public RemoteTree(SVNRepository repo, String rootPath, boolean lazy, TransferMetrics metrics) {
+        this.repo = repo;
+        this.metrics = metrics;
+        this.rootPath = rootPath;
+        this.lazy = lazy;
+    }
+
+    private static final class Node {
+        /**
+         * Combination of {@link #DIR}, {@link #COMPLETE}, {@link #REMOTE}, and {@link #ADDED}.
+         */
+        byte flags;
+
+        /**
+         * Children that we know of, in an open-addressing hash table. Null for files.
+         */
+        String[] names;
+        Node[] children;
+        int size;
+
+        Node(int flags) {
+            this.flags = (byte)flags;
+            if(is(DIR)) {
+                names = new String[4];
+                children = new Node[4];
+            }
+        }
+
+        boolean is(int flag) {
+            return (flags&flag)!=0;
+        }
+
+        void set(int flag) {
+            flags |= flag;
+        }
+
+        /**
+         * Finds the child whose name is <tt>path.substring(from,to)</tt>, without creating that string.
+         */
+        Node get(String path, int from, int to) {
+            int len = to-from;
+            int mask = names.length-1;
+            for (int i=hash(path,from,to)&mask; ; i=(i+1)&mask) {
+                String n = names[i];
+                if(n==null)     return null;
+                if(n.length()==len && n.regionMatches(0,path,from,len))
+                    return children[i];
+            }
+        }
+
+        /**
+         * Gets the child of the given name, creating it if it's not there.
+         */
+        Node child(String name, int flags) {
+            Node c = get(name,0,name.length());
+            if(c==null) {
+                if((size+1)*4>names.length*3)
+                    resize(names.length*2);
+                put(name,c=new Node(flags));
+            }
+            return c;
+        }
+
+        private void put(String name, Node c) {
+            int mask = names.length-1;
+            int i = hash(name,0,name.length())&mask;
+            while(names[i]!=null)
+                i = (i+1)&mask;
+            names[i] = name;
+            children[i] = c;
+            size++;
+        }
+
+        void remove(String name) {
+            String[] oldNames = names;
+            Node[] oldChildren = children;
+            // deletes are rare. just rebuild the table without it
+            names = new String[oldNames.length];
+            children = new Node[oldNames.length];
+            size = 0;
+            for (int i=0; i<oldNames.length; i++)
+                if(oldNames[i]!=null && !oldNames[i].equals(name))
+                    put(oldNames[i],oldChildren[i]);
+        }
+
+        private void resize(int capacity) {
+            String[] oldNames = names;
+            Node[] oldChildren = children;
+            names = new String[capacity];
+            children = new Node[capacity];
+            size = 0;
+            for (int i=0; i<oldNames.length; i++)
+                if(oldNames[i]!=null)
+                    put(oldNames[i],oldChildren[i]);
+        }
+
+        private static int hash(String s, int from, int to) {
+            int h = 0;
+            for (int i=from; i<to; i++)
+                h = 31*h+s.charAt(i);
+            return h^(h>>>16);
+        }
+    }
+
+    /**
+     * The node is a directory.
+     */
+    private static final int DIR = 1;
+    /**
+     * The children of this directory that we know of are all the children it has,
+     * thus a name that's not there doesn't exist.
+     */
+    private static final int COMPLETE = 2;
+    /**
+     * The node exists on the server.
+     */
+    private static final int REMOTE = 4;
+    /**
+     * The node is added by the commit editor.
+     */
+    private static final int ADDED = 8;
+
+    /**
+     * Gets the shared copy of a name.
+     */
+    private String intern(String name) {
+        String s = names.get(name);
+        if(s==null)
+            names.put(name,s=name);
+        return s;
+    }
+
+    /**
+     * Checks if the given path exists on the server or has been added in this session.
+     *
+     * @param path
+     *      Path from the repository root, like "/trunk/repository/foo".
+     */
+    public boolean exists(String path) throws SVNException {
+        long start = metrics.start();
+        try {
+            return doExists(path);
+        } finally {
+            metrics.time("exists",start);
+        }
+    }
+
+    private boolean doExists(String path) throws SVNException {
+        if(!prefetched) {
+            prefetched = true;
+            try {
+                prefetch();
+            } catch (SVNException e) {
+                // some servers don't like the status report. fall back to listing one by one
+                lazy = true;
+            }
+        }
+
+        Node n = root;
+        int len = path.length();
+        for (int from=0; from<len; ) {
+            int to = path.indexOf('/',from);
+            if(to<0)    to = len;
+            if(to==from) {
+                from++;
+                continue;
+            }
+            if(!n.is(DIR))  return false;
+
+            Node c = n.get(path,from,to);
+            if(c==null) {
+                if(n.is(COMPLETE))  return false;
+                String parent = path.substring(0,Math.max(from-1,0));
+                if(lazy || isUnderRoot(parent)) {
+                    list(parent,n);
+                    c = n.get(path,from,to);
+                } else {
+                    // ancestors of the wagon root. just check this one path,
+                    // since listing siblings of the wagon root is of no use.
+                    long start = metrics.start();
+                    SVNNodeKind kind = repo.checkPath(path.substring(0,to),-1);
+                    metrics.roundTrip("checkPath",start);
+                    if(kind!=SVNNodeKind.NONE)
+                        c = n.child(intern(path.substring(from,to)),kind==SVNNodeKind.DIR ? DIR|REMOTE : REMOTE);
+                }
+                if(c==null)     return false;
+            }
+            n = c;
+            from = to+1;
+        }
+        return true;
+    }
+
+    /**
+     * Records a path added by the commit editor.
+     *
+     * @throws SVNException
+     *      if one of the parent directories is a file, in which case the commit fails anyway.
+     */
+    public void added(String path, boolean dir) throws SVNException {
+        Node n = root;
+        String[] segments = path.split("/");
+        for (int i=0; i<segments.length; i++) {
+            String name = segments[i];
+            if(name.length()==0)    continue;
+            if(!n.is(DIR)) {
+                StringBuilder parent = new StringBuilder();
+                for (int j=0; j<i; j++)
+                    if(segments[j].length()>0)
+                        parent.append('/').append(segments[j]);
+                throw new SVNException(SVNErrorMessage.create(SVNErrorCode.FS_NOT_DIRECTORY,
+                    "Unable to add {0}, since {1} is a file",new Object[]{path,parent}));
+            }
+            // nothing can be in a directory we've just created
+            n = n.child(intern(name),dir || i<segments.length-1 ? DIR|COMPLETE|ADDED : ADDED);
+        }
+    }
+
+    /**
+     * Records a path deleted by the commit editor.
+     */
+    public void deleted(String path) {
+        Node n = root;
+        String[] segments = path.split("/");
+        for (int i=0; i<segments.length-1; i++) {
+            if(segments[i].length()==0)    continue;
+            n = n.get(segments[i],0,segments[i].length());
+            if(n==null || !n.is(DIR))  return;
+        }
+        n.remove(segments[segments.length-1]);
+    }
+
+    /**
+     * Is the given directory the wagon root or its descendant?
+     */
+    private boolean isUnderRoot(String dir) {
+        if(rootPath.length()==0)    return true;
+        String top = '/'+rootPath;
+        return dir.equals(top) || dir.startsWith(top+'/');
+    }
+
+    /**
+     * Fills in the children of the given directory with one getDir call.
+     */
+    private void list(String path, Node n) throws SVNException {
+        if(path.length()==0)    path="/";
+        try {
+            long start = metrics.start();
+            Collection entries = repo.getDir(path,-1,null,(Collection)null);
+            metrics.roundTrip("getDir",start);
+            for (Object o : entries) {
+                SVNDirEntry e = (SVNDirEntry) o;
+                n.child(intern(e.getName()),e.getKind()==SVNNodeKind.DIR ? DIR|REMOTE : REMOTE);
+            }
+        } catch (SVNException e) {
+            // https:// protocol reports an error for a missing directory.
+            // anything else means we don't know what's there
+            if(!isNotFound(e))  throw e;
+        }
+        n.set(COMPLETE);
+    }
+
+    /**
+     * Does the error mean the path doesn't exist, as opposed to a failure to ask the server?
+     */
+    static boolean isNotFound(SVNException e) {
+        SVNErrorCode code = e.getErrorMessage().getErrorCode();
+        return code.equals(SVNErrorCode.FS_NOT_FOUND)
+            || code.equals(SVNErrorCode.FS_NOT_DIRECTORY)
+            || code.equals(SVNErrorCode.RA_DAV_PATH_NOT_FOUND);
+    }
+
+    /**
+     * Fills in everything under the wagon root in one round trip.
+     */
+    private void prefetch() throws SVNException {
+        if(lazy)    return;
+
+        String top = '/'+rootPath;
+        long start = metrics.start();
+        SVNNodeKind kind = repo.checkPath(top,-1);
+        metrics.roundTrip("checkPath",start);
+        if(kind!=SVNNodeKind.DIR)
+            return; // nothing to prefetch. the rest of the code will figure it out
+
+        // mark the ancestors
+        Node n = root;
+        for (String name : rootPath.split("/"))
+            if(name.length()>0)
+                n = n.child(intern(name),DIR|REMOTE);
+        final Node base = n;
+
+        SVNURL root = repo.getLocation();
+        repo.setLocation(root.appendPath(rootPath,false),false);
+        try {
+            start = metrics.start();
+            final long rev = repo.getLatestRevision();
+            metrics.roundTrip("getLatestRevision",start);
+            start = metrics.start();
+            repo.status(rev, null, true, new ISVNReporterBaton() {
+                public void report(ISVNReporter reporter) throws SVNException {
+                    reporter.setPath("",null,rev,true);
+                    reporter.finishReport();
+                }
+            }, new TreeBuilder(base));
+            metrics.roundTrip("status",start);
+            complete(base);
+        } finally {
+            repo.setLocation(root,false);
+        }
+    }
+
+    private static void complete(Node n) {
+        if(!n.is(DIR))  return;
+        n.set(COMPLETE);
+        for (Node c : n.children)
+            if(c!=null)
+                complete(c);
+    }
+
+    /**
+     * {@link ISVNEditor} that receives the status report and builds up the tree.
+     * Since the report is done against an empty working copy, everything is reported as added.
+     */
+    private final class TreeBuilder implements ISVNEditor {
+        private final Node base;
+
+        TreeBuilder(Node base) {
+            this.base = base;
+        }
+
+        private void add(String path, boolean dir) {
+            Node n = base;
+            String[] names = path.split("/");
+            for (int i=0; i<names.length; i++) {
+                if(names[i].length()==0)    continue;
+                n = n.child(intern(names[i]),dir || i<names.length-1 ? DIR|REMOTE : REMOTE);
+            }
+        }
+
+        public void targetRevision(long revision) {}
+        public void openRoot(long revision) {}
+        public void deleteEntry(String path, long revision) {}
+        public void absentDir(String path) {}
+        public void absentFile(String path) {}
+
+        public void addDir(String path, String copyFromPath, long copyFromRevision) {
+            add(path,true);
+        }
+
+        public void openDir(String path, long revision) {}
+        public void changeDirProperty(String name, String value) {}
+        public void closeDir() {}
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) {
+            add(path,false);
+        }
+
+        public void openFile(String path, long revision) {}
+        public void changeFileProperty(String path, String name, String value) {}
+        public void closeFile(String path, String textChecksum) {}
+        public void applyTextDelta(String path, String baseChecksum) {}
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {}
+
+        public SVNCommitInfo closeEdit() {
+            return null;
+        }
+
+        public void abortEdit() {}
+    }
+}
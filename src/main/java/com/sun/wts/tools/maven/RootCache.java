@@ -0,0 +1,156 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Remembers the repository root and UUID of the URLs we've connected to,
+ * in a file in {@link CacheDir}, so that connecting doesn't have to
+ * ask the server about them every time. The answer for a given URL almost never changes.
+ *
+ * <p>
+ * An entry is checked against the server on the first request of a new session,
+ * and discarded when it turns out to be wrong, which is when we fail to connect
+ * with it, or the server reports a different UUID or root.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RootCache {
+    private final File file;
+
+    /**
+     * From URLs to "UUID root" strings. Lazily loaded.
+     */
+    private Properties props;
+
+    public static final class Entry {
+        public final SVNURL root;
+        public final String uuid;
+
+        Entry(SVNURL root, String uuid) {
+            this.root = root;
+            this.uuid = uuid;
+        }
+    }
+
+    public RootCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets what we know about the given URL.
+     *
+     * @return
+     *      null if we don't know.
+     */
+    public synchronized Entry get(String url) {
+        String v = load().getProperty(url);
+        if(v==null)     return null;
+        int idx = v.indexOf(' ');
+        try {
+            return new Entry(SVNURL.parseURIEncoded(v.substring(idx+1)),v.substring(0,idx));
+        } catch (SVNException e) {
+            return null;    // corrupted
+        }
+    }
+
+    public synchronized void put(String url, SVNURL root, String uuid) {
+        load().setProperty(url,uuid+' '+root.toString());
+        save();
+    }
+
+    /**
+     * Discards what we know about the given URL, because it turned out to be wrong.
+     */
+    public synchronized void remove(String url) {
+        if(load().remove(url)!=null)
+            save();
+    }
+
+    private Properties load() {
+        if(props==null) {
+            props = new Properties();
+            if(file.exists()) {
+                try {
+                    FileInputStream in = new FileInputStream(file);
+                    try {
+                        props.load(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    // start afresh
+                }
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Writes to a temporary file first, so that other JVMs never see a partially written file.
+     */
+    private void save() {
+        try {
+            File tmp = File.createTempFile("roots",".tmp",file.getParentFile());
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out,"Repository roots known to wagon-svn");
+            } finally {
+                out.close();
+            }
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                if(!tmp.renameTo(file))
+                    tmp.delete();
+            }
+        } catch (IOException e) {
+            // it's just a cache
+        }
+    }
+
+    /**
+     * The cache shared by all the wagons in this JVM.
+     */
+    public static final RootCache INSTANCE = new RootCache(CacheDir.get("roots.properties"));
+}
@@ -83,13 +83,32 @@ public class SVNConsoleAuthenticationProvider implements ISVNAuthenticationProvi
     }
 
     public int acceptServerAuthentication(SVNURL url, String realm, Object certificate, boolean resultMayBeStored) {
-        if (!(certificate instanceof X509Certificate) || !isInteractive) {
+        if (!(certificate instanceof X509Certificate)) {
             return ACCEPTED_TEMPORARY;
         }
 
         String hostName = url.getHost();
         X509Certificate cert = (X509Certificate) certificate;
+        String site = hostName + ':' + url.getPort();
+        String fingerprint = SVNSSLUtil.getFingerprint(cert);
+        String pinned = PinnedCertificates.INSTANCE.get(site);
+        if (fingerprint.equals(pinned)) {
+            return ACCEPTED_TEMPORARY;
+        }
+        if (pinned != null && PinnedCertificates.isRepinRequested(site)) {
+            // the user told us the server has a new certificate
+            PinnedCertificates.INSTANCE.pin(site, fingerprint);
+            return ACCEPTED_TEMPORARY;
+        }
+        if (!isInteractive) {
+            // a certificate that differs from the one the user accepted permanently is suspicious
+            return pinned != null ? REJECTED : ACCEPTED_TEMPORARY;
+        }
+
         StringBuffer prompt = SVNSSLUtil.getServerCertificatePrompt(cert, realm, hostName);
+        if (pinned != null) {
+            prompt.insert(0, "WARNING: the certificate of '" + site + "' has changed since it was accepted permanently.\n");
+        }
         if (resultMayBeStored) {
             prompt.append("\n(R)eject, accept (t)emporarily or accept (p)ermanently? ");
         } else {
@@ -110,6 +129,7 @@ public class SVNConsoleAuthenticationProvider implements ISVNAuthenticationProvi
                 } else if (ch == 't' || ch == 'T') {
                     return ACCEPTED_TEMPORARY;
                 } else if (resultMayBeStored && (ch == 'p' || ch == 'P')) {
+                    PinnedCertificates.INSTANCE.pin(site, fingerprint);
                     return ACCEPTED;
                 }
             } catch (IOException e) {
@@ -83,7 +83,7 @@ public class SVNSSLUtil {
 
     }
 
-    private static String getFingerprint(X509Certificate cert) {
+    static String getFingerprint(X509Certificate cert) {
         StringBuffer s = new StringBuffer();
         try  {
            MessageDigest md = MessageDigest.getInstance("SHA1");
@@ -0,0 +1,223 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * JVM-wide cache of idle {@link SVNRepository} sessions.
+ *
+ * <p>
+ * Maven looks up a new wagon instance for every transfer (and so does
+ * every module in a multi-module build), so without this every one of them
+ * would have to connect, negotiate SSL/SSH, and authenticate from scratch.
+ * Instead, sessions are returned here when a wagon is closed, and handed
+ * to the next wagon that connects to the same repository root with the same credentials.
+ *
+ * <p>
+ * Sessions idle for longer than the timeout are closed, and so is the oldest
+ * session when the cache is full.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SessionCache {
+    private final int maxSize;
+
+    private final long idleTimeout;
+
+    /**
+     * Idle sessions by their keys. Most recently used first.
+     */
+    private final Map<String,LinkedList<Entry>> idle = new HashMap<String,LinkedList<Entry>>();
+
+    private int size;
+
+    private Timer timer;
+
+    private static final class Entry {
+        final SVNRepository repo;
+        final long lastUsed = System.currentTimeMillis();
+
+        Entry(SVNRepository repo) {
+            this.repo = repo;
+        }
+    }
+
+    public SessionCache(int maxSize, long idleTimeout) {
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Computes the key of a session.
+     *
+     * @param root
+     *      URL of the repository root, where the session is located.
+     * @param authenticationKey
+     *      Identifies the credentials and the way they are obtained.
+     */
+    public static String key(String root, String authenticationKey, Class wagonType) {
+        return root+'\n'+authenticationKey+'\n'+wagonType.getName();
+    }
+
+    /**
+     * Hashes a password, so that keys can tell different passwords apart
+     * without keeping them in clear text.
+     */
+    static String digest(String password) {
+        if(password==null)  return "";
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return DirectorySync.toHex(md.digest(password.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // SHA-256 is always there
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e); // UTF-8 is always there
+        }
+    }
+
+    /**
+     * Takes an idle session out of the cache.
+     *
+     * @return
+     *      null if there's no idle session for the key.
+     */
+    public synchronized SVNRepository checkOut(String key) {
+        LinkedList<Entry> l = idle.get(key);
+        while(l!=null && !l.isEmpty()) {
+            Entry e = l.removeFirst();
+            size--;
+            if(!isExpired(e))
+                return e.repo;
+            close(e.repo);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a session to the cache, so that it can be used by the next wagon.
+     * The session must be located at the repository root.
+     */
+    public void checkIn(String key, SVNRepository repo) {
+        if(maxSize<=0 || idleTimeout<=0) {
+            // caching disabled, or the session would expire right away
+            close(repo);
+            return;
+        }
+
+        List<SVNRepository> evicted = new ArrayList<SVNRepository>();
+        synchronized(this) {
+            LinkedList<Entry> l = idle.get(key);
+            if(l==null)
+                idle.put(key,l=new LinkedList<Entry>());
+            l.addFirst(new Entry(repo));
+            size++;
+
+            while(size>maxSize)
+                evicted.add(removeOldest());
+
+            if(timer==null) {
+                timer = new Timer("wagon-svn session cache",true);
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        evictExpired();
+                    }
+                },idleTimeout,idleTimeout);
+            }
+        }
+
+        for (SVNRepository r : evicted)
+            close(r);
+    }
+
+    private SVNRepository removeOldest() {
+        LinkedList<Entry> oldest = null;
+        for (LinkedList<Entry> l : idle.values())
+            if(!l.isEmpty() && (oldest==null || l.getLast().lastUsed<oldest.getLast().lastUsed))
+                oldest = l;
+        size--;
+        return oldest.removeLast().repo;
+    }
+
+    /**
+     * Closes all the sessions that have been idle for too long.
+     */
+    public void evictExpired() {
+        List<SVNRepository> evicted = new ArrayList<SVNRepository>();
+        synchronized(this) {
+            for (Iterator<LinkedList<Entry>> itr = idle.values().iterator(); itr.hasNext();) {
+                LinkedList<Entry> l = itr.next();
+                while(!l.isEmpty() && isExpired(l.getLast())) {
+                    evicted.add(l.removeLast().repo);
+                    size--;
+                }
+                if(l.isEmpty())
+                    itr.remove();
+            }
+        }
+
+        for (SVNRepository r : evicted)
+            close(r);
+    }
+
+    private boolean isExpired(Entry e) {
+        return e.lastUsed+idleTimeout < System.currentTimeMillis();
+    }
+
+    private static void close(SVNRepository repo) {
+        repo.closeSession();
+    }
+
+    /**
+     * The cache shared by all the wagons in this JVM.
+     */
+    public static final SessionCache INSTANCE = new SessionCache(
+        Integer.getInteger("wagon.svn.sessionCacheSize",16),
+        Long.getLong("wagon.svn.sessionIdleTimeout",60*1000));
+}
@@ -0,0 +1,121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Pool of read-only {@link SVNRepository} sessions, for doing things in parallel.
+ * A session can only be used by one thread at a time.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public abstract class SessionPool {
+    private final int max;
+
+    private final LinkedList<SVNRepository> idle = new LinkedList<SVNRepository>();
+
+    private final List<SVNRepository> all = new ArrayList<SVNRepository>();
+
+    /**
+     * @param max
+     *      Maximum number of sessions to open.
+     */
+    protected SessionPool(int max) {
+        this.max = max;
+    }
+
+    /**
+     * Opens a new session located at the repository root.
+     */
+    protected abstract SVNRepository create() throws SVNException;
+
+    /**
+     * Disposes a session that's no longer needed.
+     */
+    protected void dispose(SVNRepository r) {
+        r.closeSession();
+    }
+
+    /**
+     * Obtains a session for the exclusive use of the calling thread.
+     * Blocks if all the sessions are in use.
+     */
+    public SVNRepository borrow() throws SVNException, InterruptedException {
+        synchronized(this) {
+            while(idle.isEmpty() && all.size()>=max)
+                wait();
+            if(!idle.isEmpty())
+                return idle.removeFirst();
+            all.add(null);  // reserve a slot, since we open it outside the lock
+        }
+
+        SVNRepository r = null;
+        try {
+            r = create();
+            return r;
+        } finally {
+            synchronized(this) {
+                all.remove(null);
+                if(r!=null) all.add(r);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the session obtained by {@link #borrow()}.
+     */
+    public synchronized void release(SVNRepository r) {
+        idle.addFirst(r);
+        notifyAll();
+    }
+
+    /**
+     * Disposes all the sessions.
+     */
+    public synchronized void close() {
+        for (SVNRepository r : all)
+            dispose(r);
+        all.clear();
+        idle.clear();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationProvider;
+import org.tmatesoft.svn.core.auth.ISVNProxyManager;
+import org.tmatesoft.svn.core.auth.ISVNSSLManager;
+import org.tmatesoft.svn.core.auth.SVNAuthentication;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNAuthenticationManager;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+import javax.net.ssl.X509TrustManager;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Authentication manager shared by all the sessions to the same server with the same credentials,
+ * for as long as the JVM runs.
+ *
+ * <p>
+ * {@link DefaultSVNAuthenticationManager} reads <tt>~/.subversion</tt> and remembers
+ * the credentials the server accepted, but only for its own lifetime. Sharing one means
+ * the configuration is read once, and the user is asked for a password at most once,
+ * instead of once per session.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SharedAuthenticationManager extends DefaultSVNAuthenticationManager {
+    /**
+     * Used if the Subversion configuration doesn't specify a proxy. Can be null.
+     */
+    private final ISVNProxyManager proxyManager;
+
+    public SharedAuthenticationManager(ISVNProxyManager proxyManager, ISVNAuthenticationProvider provider) {
+        super(SVNWCUtil.getDefaultConfigurationDirectory(), true, null, null, null, null);
+        this.proxyManager = proxyManager;
+        setAuthenticationProvider(provider);
+    }
+
+    @Override
+    public ISVNProxyManager getProxyManager(SVNURL url) throws SVNException {
+        ISVNProxyManager pm = super.getProxyManager(url);
+        return pm!=null ? pm : proxyManager;
+    }
+
+    // sessions of different wagons and threads may authenticate at the same time
+
+    @Override
+    public synchronized SVNAuthentication getFirstAuthentication(String kind, String realm, SVNURL url) throws SVNException {
+        return super.getFirstAuthentication(kind, realm, url);
+    }
+
+    @Override
+    public synchronized SVNAuthentication getNextAuthentication(String kind, String realm, SVNURL url) throws SVNException {
+        return super.getNextAuthentication(kind, realm, url);
+    }
+
+    @Override
+    public synchronized void acknowledgeAuthentication(boolean accepted, String kind, String realm, SVNErrorMessage errorMessage, SVNAuthentication authentication) throws SVNException {
+        super.acknowledgeAuthentication(accepted, kind, realm, errorMessage, authentication);
+    }
+
+    /**
+     * Wraps the SSL manager so that full handshakes, which are when the server certificate is verified,
+     * are counted and timed in {@link TransferMetrics#INSTANCE} as "sslHandshake".
+     * A handshake that resumes a session doesn't verify the certificate, so it isn't counted.
+     */
+    @Override
+    public ISVNSSLManager getSSLManager(SVNURL url) throws SVNException {
+        final ISVNSSLManager m = super.getSSLManager(url);
+        if(m==null)     return null;
+        return (ISVNSSLManager)Proxy.newProxyInstance(ISVNSSLManager.class.getClassLoader(),new Class[]{ISVNSSLManager.class},new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                // the trust manager is asked for right before the socket is created
+                final long start = TransferMetrics.INSTANCE.start();
+                Object r;
+                try {
+                    r = method.invoke(m,args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+                if(!method.getName().equals("getTrustManager") || !(r instanceof X509TrustManager))
+                    return r;
+
+                final X509TrustManager tm = (X509TrustManager)r;
+                return new X509TrustManager() {
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                        tm.checkClientTrusted(chain,authType);
+                    }
+
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                        try {
+                            tm.checkServerTrusted(chain,authType);
+                        } finally {
+                            TransferMetrics.INSTANCE.time("sslHandshake",start);
+                        }
+                    }
+
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return tm.getAcceptedIssuers();
+                    }
+                };
+            }
+        });
+    }
+
+    private static final Map<String,SharedAuthenticationManager> MANAGERS = new HashMap<String,SharedAuthenticationManager>();
+
+    /**
+     * Gets the manager for the given key.
+     *
+     * @return
+     *      null if there's none yet.
+     */
+    public static synchronized SharedAuthenticationManager get(String key) {
+        return MANAGERS.get(key);
+    }
+
+    /**
+     * Registers a manager, unless another thread has done so first.
+     *
+     * @return
+     *      the manager to use.
+     */
+    public static synchronized SharedAuthenticationManager register(String key, SharedAuthenticationManager m) {
+        SharedAuthenticationManager existing = MANAGERS.get(key);
+        if(existing!=null)  return existing;
+        MANAGERS.put(key,m);
+        return m;
+    }
+}
@@ -41,36 +41,42 @@ import org.apache.maven.wagon.ResourceDoesNotExistException;
 import org.apache.maven.wagon.TransferFailedException;
 import org.apache.maven.wagon.Wagon;
 import org.apache.maven.wagon.authentication.AuthenticationException;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
 import org.apache.maven.wagon.authorization.AuthorizationException;
 import org.apache.maven.wagon.events.TransferEvent;
 import org.apache.maven.wagon.repository.Repository;
 import org.apache.maven.wagon.resource.Resource;
 import org.codehaus.plexus.util.FileUtils;
+import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNURL;
-import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationProvider;
 import org.tmatesoft.svn.core.auth.ISVNProxyManager;
 import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
-import org.tmatesoft.svn.core.internal.wc.DefaultSVNAuthenticationManager;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
-import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
-import org.tmatesoft.svn.core.wc.SVNWCUtil;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.EmptyStackException;
 
 /**
@@ -99,10 +105,232 @@ public class SubversionWagon extends AbstractWagon {
 
     private ISVNEditor editor;
 
+    private SVNURL repositoryRoot;
+
+    /**
+     * UUID of the repository we are connected to.
+     */
+    private String repositoryUUID;
+
+    /**
+     * Cache of downloaded files shared by all the builds on this host, or null if disabled.
+     */
+    private ContentCache contentCache;
+
+    /**
+     * If true, all the reads in a connection are done against the revision that was
+     * HEAD when the first read happened, so that they are consistent with each other.
+     */
+    private boolean pinReads = Boolean.getBoolean("wagon.svn.pinReads");
+
+    /**
+     * Revision specified in the URL, or -1 if none.
+     */
+    private long pinnedRevision = -1;
+
+    /**
+     * Revision all the reads are done against, or -1 to read from HEAD.
+     */
+    private long readRevision = -1;
+
+    /**
+     * Revisions at which local files were downloaded.
+     */
+    private FreshnessIndex freshness;
+
+    /**
+     * Directory listings of this repository, for {@link #resourceExists(String)} and {@link #getFileList(String)}.
+     */
+    private RemoteIndex index;
+
+    /**
+     * True once {@link #index} is brought up to date in this connection,
+     * until we commit something.
+     */
+    private boolean indexUpdated;
+
+    /**
+     * Identifies the sessions in {@link SessionCache} that this wagon can use.
+     */
+    private String sessionKey;
+
+    /**
+     * What we know about the remote directory tree, including paths added by the
+     * commit editor that {@link #queryRepo} can't see yet.
+     */
+    private RemoteTree tree;
+
+    /**
+     * If true, the whole remote tree under the wagon root is fetched at once, instead of
+     * being listed one directory at a time as we need it. Only good for small trees.
+     */
+    private boolean prefetchTree = Boolean.getBoolean("wagon.svn.prefetchTree");
+
+    /**
+     * Files that are put but not yet sent to the commit editor.
+     */
+    private final CommitPlan plan = new CommitPlan();
+
+    /**
+     * If true, {@link #put(File, String)} only records the file, and everything is sent
+     * in one pass when the connection is closed.
+     */
+    private boolean deferCommit = Boolean.getBoolean("wagon.svn.deferCommit");
+
+    /**
+     * True while {@link #putDirectory(File, String)} or {@link #putAll(Map)} is adding files to {@link #plan}.
+     */
+    private boolean batching;
+
+    /**
+     * Copies of small files taken by deferred puts, since Maven often deletes
+     * the checksum files right after they are put. Lazily created.
+     */
+    private File stagingDir;
+
+    /**
+     * Files bigger than this are always uploaded as full text. Smaller files that
+     * already exist in the repository are sent as a delta against the current revision.
+     * 0 to always send full text.
+     */
+    private long maxDeltaSize = Long.getLong("wagon.svn.maxDeltaSize",4*1024*1024);
+
+    /**
+     * Compress the windows of files that aren't already compressed when uploading over DAV.
+     * Servers older than Subversion 1.4 can't read them.
+     */
+    private boolean davCompression = Boolean.valueOf(System.getProperty("wagon.svn.davCompression","true"));
+
+    private DeltaSender deltaSender;
+
+    /**
+     * If positive, a commit is closed and a new one is started once this many files are sent,
+     * so that a huge upload doesn't become one huge transaction.
+     */
+    private int chunkFiles = Integer.getInteger("wagon.svn.chunkFiles",0);
+
+    /**
+     * If positive, a commit is closed and a new one is started once this many bytes are sent.
+     */
+    private long chunkBytes = Long.getLong("wagon.svn.chunkBytes",0);
+
+    /**
+     * If set, files committed by this deployment are recorded in {@link #journal},
+     * so that a retry with the same ID skips them.
+     */
+    private String deploymentId = System.getProperty("wagon.svn.deploymentId");
+
+    private DeployJournal journal;
+
+    /**
+     * Round trips, bytes, and latencies of this wagon.
+     */
+    private final TransferMetrics metrics = createMetrics();
+
+    /**
+     * If set, the JSON summary of {@link TransferMetrics#INSTANCE} is written to this file
+     * every time a connection is closed.
+     */
+    private String metricsFile = System.getProperty("wagon.svn.metricsFile");
+
+    /**
+     * Checksums of the files sent in the current commit, to be recorded in {@link #journal}.
+     */
+    private final Map<String,String> sentInEdit = new HashMap<String,String>();
+
+    /**
+     * Paths sent in the current commit. The transaction has what we sent for them,
+     * not the text in HEAD, so they can't be sent again as a delta against HEAD.
+     */
+    private final Set<String> pathsInEdit = new HashSet<String>();
+
+    /**
+     * Number of files and bytes sent in the current commit.
+     */
+    private int filesInEdit;
+    private long bytesInEdit;
+
+    /**
+     * If true, {@link #putDirectory(File, String)} only uploads files that are
+     * different from what's already in the repository.
+     */
+    private boolean sync = Boolean.getBoolean("wagon.svn.sync");
+
+    /**
+     * If true in addition to {@link #sync}, files in the repository that
+     * don't exist locally are deleted.
+     */
+    private boolean syncDelete = Boolean.getBoolean("wagon.svn.syncDelete");
+
+    /**
+     * Number of threads that compute deltas ahead of the commit editor.
+     * 1 to do everything on the thread that drives the editor.
+     */
+    private int threads = Integer.getInteger("wagon.svn.threads",Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Maximum amount of memory in bytes used to hold deltas computed ahead of the commit editor.
+     */
+    private long pipelineMemory = Long.getLong("wagon.svn.pipelineMemory",64*1024*1024);
+
+    /**
+     * Maximum number of read sessions used for downloads and for computing deltas,
+     * which is also the number of downloads that can run in parallel.
+     */
+    private int readSessions = Integer.getInteger("wagon.svn.readSessions",Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Read sessions used by downloads, and by threads other than the one that drives the commit editor.
+     * {@link #queryRepo} is reserved for the latter.
+     */
+    private SessionPool sessions;
+
+    private final CommitPlan.Sender sender = new CommitPlan.Sender() {
+        public String send(ISVNEditor editor, String path, File source, boolean exists) throws SVNException, IOException {
+            return deltaSender.send(editor,path,source,exists);
+        }
+    };
+
+    /**
+     * Wraps a {@link CommitPlan.Sender} so that files already sent in this commit
+     * are sent again as full text.
+     */
+    private CommitPlan.Sender track(final CommitPlan.Sender s) {
+        return new CommitPlan.Sender() {
+            public String send(ISVNEditor editor, String path, File source, boolean exists) throws SVNException, IOException {
+                String checksum = s.send(editor,path,source,exists && !pathsInEdit.contains(path));
+                pathsInEdit.add(path);
+                return checksum;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #track(CommitPlan.Sender)}, for the files that {@link DeltaPipeline} prepares ahead.
+     */
+    private List<CommitPlan.Item> track(List<CommitPlan.Item> items) {
+        for (ListIterator<CommitPlan.Item> i=items.listIterator(); i.hasNext(); ) {
+            CommitPlan.Item item = i.next();
+            if(item.exists && pathsInEdit.contains(item.path))
+                i.set(new CommitPlan.Item(item.path,item.source,false));
+        }
+        return items;
+    }
+
     /**
-     * Paths added by the commit editor that {@link #queryRepo} can't see yet.
+     * Wraps a {@link CommitPlan.Sender} to remember the checksums of the files sent,
+     * if we are keeping the journal.
      */
-    private final Set<String> pathAdded = new HashSet<String>();
+    private CommitPlan.Sender record(final CommitPlan.Sender s) {
+        if(journal==null)   return s;
+        return new CommitPlan.Sender() {
+            public String send(ISVNEditor editor, String path, File source, boolean exists) throws SVNException, IOException {
+                String checksum = s.send(editor,path,source,exists);
+                sentInEdit.put(path,checksum);
+                return checksum;
+            }
+        };
+    }
 
     public void openConnection() throws ConnectionException, AuthenticationException {
         try {
@@ -113,33 +341,159 @@ public class SubversionWagon extends AbstractWagon {
     }
 
     protected void doOpenConnection() throws SVNException {
+        long start = metrics.start();
+        try {
+            resolveAndConnect();
+        } finally {
+            metrics.roundTrip("connect",start);
+        }
+    }
+
+    /**
+     * Connects to the repository, using what we remember about the URL if we can.
+     */
+    private void resolveAndConnect() throws SVNException {
         String url = getSubversionURL();
 
+        // URL like http://server/svn/repo@1234 reads from the specific revision
+        pinnedRevision = -1;
+        int idx = url.lastIndexOf('@');
+        if(idx>0 && url.substring(idx+1).matches("[0-9]+")) {
+            pinnedRevision = Long.parseLong(url.substring(idx+1));
+            url = url.substring(0,idx);
+        }
+        readRevision = pinnedRevision;
+
+        RootCache.Entry e = RootCache.INSTANCE.get(url);
+        if(e!=null) {
+            try {
+                if(connect(url,e.root,e.uuid))
+                    return;
+            } catch (SVNException x) {
+                // perhaps because what we remember is no longer correct
+            }
+            fireTransferDebug("Repository root of "+url+" has changed since we last connected");
+            RootCache.INSTANCE.remove(url);
+            closeSessions(false);
+        }
+
+        connect(url,null,null);
+    }
+
+    /**
+     * Connects to the repository.
+     *
+     * @param knownRoot
+     *      The repository root of the URL if we know it, in which case we don't ask the server
+     *      to find it, but only check it.
+     * @param knownUuid
+     *      The UUID of the repository that we expect, if we know it.
+     * @return
+     *      false if the server reports a different UUID or root, which means we shouldn't trust
+     *      what we know about the URL.
+     */
+    private boolean connect(String url, SVNURL knownRoot, String knownUuid) throws SVNException {
         SVNURL repoUrl = SVNURL.parseURIDecoded(url);
-        queryRepo = SVNRepositoryFactory.create(repoUrl);
-        configureAuthenticationManager(queryRepo);
+        SVNURL root = knownRoot;
+        SVNRepository repo = null;
+        if(root==null) {
+            // ask the server
+            repo = createRepository(repoUrl);
+            try {
+                root = repo.getRepositoryRoot(true);
+                repositoryUUID = repo.getRepositoryUUID(true);
+            } catch (SVNException e) {
+                repo.closeSession();
+                throw e;
+            }
+            RootCache.INSTANCE.put(url,root,repositoryUUID);
+            // at least in case of file:// URL, the commit editor remembers the root path
+            // portion and that interferes with the way we work, so all the sessions are
+            // located at the repository root.
+            repo.setLocation(root,false);
+        } else {
+            repositoryUUID = knownUuid;
+        }
+        final SVNURL repoRoot = root;
+
+        sessionKey = SessionCache.key(repoRoot.toString(),getAuthenticationKey(),getClass());
 
         // when URL is given like http://svn.dev.java.net/svn/abc/trunk/xyz, we need to compute
         // repositoryRoot=http://svn.dev.java.net/abc and rootPath=/trunk/xyz
-        rootPath = repoUrl.getPath().substring(queryRepo.getRepositoryRoot(true).getPath().length());
+        rootPath = repoUrl.getPath().substring(repoRoot.getPath().length());
         if(rootPath.startsWith("/"))    rootPath=rootPath.substring(1);
 
-        // at least in case of file:// URL, the commit editor remembers the root path
-        // portion and that interferes with the way we work, so re-open the repository
-        // with the correct root.
-        SVNURL repoRoot = queryRepo.getRepositoryRoot(true);
-        queryRepo.setLocation(repoRoot,false);
+        queryRepo = repo!=null ? repo : openSession(repoRoot);
+        if(knownUuid!=null) {
+            // a moved or reloaded repository would make the caches keyed by the UUID serve wrong data,
+            // so check with the server. Unless the session is reused, this is the request that
+            // connects and authenticates anyway, and the root comes along with the UUID.
+            String uuid = queryRepo.getRepositoryUUID(true);
+            SVNURL actualRoot = queryRepo.getRepositoryRoot(true);
+            if(!knownUuid.equals(uuid) || !repoRoot.equals(actualRoot))
+                return false;
+        }
+        tree = new RemoteTree(queryRepo,rootPath,!prefetchTree,metrics);
+        contentCache = ContentCache.get();
+        freshness = new FreshnessIndex(CacheDir.get("fetched/"+repositoryUUID+".properties"),'/'+rootPath);
+        index = RemoteIndex.get(repositoryUUID);
+        if(deploymentId!=null)
+            journal = DeployJournal.get(repositoryUUID,deploymentId);
+        deltaSender = new DeltaSender(queryRepo,maxDeltaSize,davCompression,metrics);
+        sessions = new SessionPool(Math.max(readSessions,1)) {
+            @Override
+            protected SVNRepository create() throws SVNException {
+                return openSession(repoRoot);
+            }
 
-        // open another one for commit
-        commitRepo = SVNRepositoryFactory.create(repoRoot);
-        configureAuthenticationManager(commitRepo);
+            @Override
+            protected void dispose(SVNRepository r) {
+                SessionCache.INSTANCE.checkIn(sessionKey,r);
+            }
+        };
 
-        // prepare a commit
-        ISVNEditor svnEditor = commitRepo.getCommitEditor("Upload by wagon-svn", new CommitMediator());
-        svnEditor.openRoot(-1);
-        // if openRoot fails, Maven calls closeConnection anyway, so don't let the incorrect
-        // editor state show through.
-        this.editor = svnEditor;
+        // the commit is only prepared when there's something to commit,
+        // since most connections are only used to download things.
+        repositoryRoot = repoRoot;
+        return true;
+    }
+
+    /**
+     * Opens another session and prepares a commit, if we haven't done so.
+     */
+    private ISVNEditor openEditor() throws SVNException {
+        if(editor==null) {
+            if(commitRepo==null)
+                commitRepo = openSession(repositoryRoot);
+
+            ISVNEditor svnEditor = metrics.wrap(commitRepo.getCommitEditor("Upload by wagon-svn", new CommitMediator()));
+            svnEditor.openRoot(-1);
+            // if openRoot fails, Maven calls closeConnection anyway, so don't let the incorrect
+            // editor state show through.
+            this.editor = svnEditor;
+        }
+        return editor;
+    }
+
+    /**
+     * Obtains a session located at the repository root, preferably
+     * an idle one left by another wagon.
+     */
+    private SVNRepository openSession(SVNURL repoRoot) throws SVNException {
+        SVNRepository r = SessionCache.INSTANCE.checkOut(sessionKey);
+        if(r!=null) return r;
+        return createRepository(repoRoot);
+    }
+
+    /**
+     * Opens a new session to the given URL. Every session this wagon talks to the server through
+     * is created here, including the ones it leaves in the session cache for other wagons.
+     * Test harnesses override this to wrap the session, to count calls or to inject latency.
+     */
+    protected SVNRepository createRepository(SVNURL url) throws SVNException {
+        SVNRepository repo = SVNRepositoryFactory.create(url);
+        configureAuthenticationManager(repo);
+        return repo;
     }
 
     /**
@@ -152,24 +506,46 @@ public class SubversionWagon extends AbstractWagon {
         return url;
     }
 
+    /**
+     * Sets the authentication manager shared by all the sessions to the same server
+     * with the same credentials, creating one if this is the first.
+     */
     private void configureAuthenticationManager(SVNRepository repo) {
-        ISVNAuthenticationManager manager =
-            new DefaultSVNAuthenticationManager(SVNWCUtil.getDefaultConfigurationDirectory(), true, null, null, null, null) {
-
-                @Override
-                public ISVNProxyManager getProxyManager(SVNURL url) throws SVNException {
-                    ISVNProxyManager pm = super.getProxyManager(url);
-                    if(pm!=null)    return pm;
-                    return SubversionWagon.this.getProxyManager(url);
-                }
-            };
+        SVNURL url = repo.getLocation();
+        String key = SessionCache.key(url.getProtocol()+"://"+url.getHost()+':'+url.getPort(),
+            getAuthenticationKey(),getClass());
 
-        manager.setAuthenticationProvider(createAuthenticationProvider());
+        SharedAuthenticationManager manager = SharedAuthenticationManager.get(key);
+        if(manager==null)
+            manager = SharedAuthenticationManager.register(key,
+                new SharedAuthenticationManager(getProxyManager(url),createAuthenticationProvider()));
         repo.setAuthenticationManager(manager);
     }
 
+    /**
+     * Identifies how this wagon authenticates. Wagons with the same key share sessions
+     * and an authentication manager, which keeps using what {@link #createAuthenticationProvider()}
+     * and {@link #getProxyManager(SVNURL)} returned for the first of them.
+     * So everything those depend on needs to be in the key.
+     */
+    protected String getAuthenticationKey() {
+        AuthenticationInfo auth = getAuthenticationInfo();
+        return (auth!=null ? auth.getUserName() : null)+'\n'
+            +SessionCache.digest(auth!=null ? auth.getPassword() : null)+'\n'
+            +isInteractive();
+    }
+
+    /**
+     * Creates the {@link TransferMetrics} that every server call of this wagon is reported to.
+     * Test harnesses override this to count calls or to inject latency.
+     */
+    protected TransferMetrics createMetrics() {
+        return new TransferMetrics(TransferMetrics.INSTANCE);
+    }
+
     /**
      * Gives the derived class a chance to set a proxy.
+     * The result is shared with other wagons, so it shouldn't refer to this wagon.
      */
     protected ISVNProxyManager getProxyManager(SVNURL url) {
         return null;
@@ -177,6 +553,7 @@ public class SubversionWagon extends AbstractWagon {
 
     /**
      * Creates an {@link ISVNAuthenticationProvider} to use.
+     * The result is shared with other wagons, so it shouldn't refer to this wagon.
      */
     protected ISVNAuthenticationProvider createAuthenticationProvider() {
         return new SVNConsoleAuthenticationProvider(
@@ -187,41 +564,189 @@ public class SubversionWagon extends AbstractWagon {
         try {
             // beware that Maven often calls this method without first opening the connection
 
-            // commit
-            if(editor!=null) {
+            // commit, if anything is put
+            if(editor!=null || !plan.isEmpty()) {
                 try {
-                    editor.closeDir();
-                    editor.closeEdit();
-                } catch (EmptyStackException e) {
-                    e.printStackTrace(); // debug probe
+                    flush();
+                    try {
+                        if(editor!=null)
+                            commitEdit();
+                    } catch (EmptyStackException e) {
+                        e.printStackTrace(); // debug probe
+                    }
+                } catch (IOException e) {
+                    abort();
+                    throw new ConnectionException("Failed to commit",e);
+                } catch (SVNException e) {
+                    abort();
+                    throw new ConnectionException("Failed to commit",e);
                 }
                 editor = null;
+                fireTransferDebug(deltaSender.toString());
+            }
+            if(contentCache!=null)
+                fireTransferDebug(contentCache.toString());
+            fireTransferDebug(metrics.toString());
+            if(metricsFile!=null) {
+                try {
+                    TransferMetrics.INSTANCE.writeJSON(new File(metricsFile));
+                } catch (IOException e) {
+                    fireTransferDebug("Failed to write "+metricsFile);
+                }
+            }
+        } finally {
+            closeSessions(true);
+        }
+    }
+
+    /**
+     * Aborts the commit in progress, if the commit failed mid-way.
+     * The commit session is in an unknown state, so it's not reused.
+     */
+    private void abort() {
+        if(editor!=null) {
+            try {
+                editor.abortEdit();
+            } catch (SVNException e) {
+                // we are already reporting a failure
             }
-            
-            if(queryRepo !=null)
-                queryRepo.closeSession();
-            queryRepo = null;
-            if(commitRepo !=null)
-                commitRepo.closeSession();
+            editor = null;
+        }
+        sentInEdit.clear();
+        pathsInEdit.clear();
+        filesInEdit = 0;
+        bytesInEdit = 0;
+        if(commitRepo!=null) {
+            closeSession(commitRepo,false);
             commitRepo = null;
-        } catch (SVNException e) {
-            throw new ConnectionException("Failed to close svn connection",e);
         }
     }
 
+    /**
+     * Returns all the sessions to {@link SessionCache} for the next wagon.
+     *
+     * @param reuse
+     *      false to close the sessions instead, because they may be in a bad state.
+     */
+    private void closeSessions(boolean reuse) {
+        if(sessions!=null)
+            sessions.close();
+        sessions = null;
+        if(queryRepo !=null)
+            closeSession(queryRepo,reuse);
+        queryRepo = null;
+        if(commitRepo !=null)
+            closeSession(commitRepo,reuse);
+        commitRepo = null;
+        editor = null;
+        journal = null;
+        sentInEdit.clear();
+        pathsInEdit.clear();
+        filesInEdit = 0;
+        bytesInEdit = 0;
+        tree = null;
+        if(freshness!=null)
+            freshness.save();
+        freshness = null;
+        if(index!=null)
+            index.save();
+        index = null;
+        indexUpdated = false;
+        readRevision = pinnedRevision;
+
+        if(stagingDir!=null) {
+            try {
+                FileUtils.deleteDirectory(stagingDir);
+            } catch (IOException e) {
+                // leave it to the temp directory cleanup
+            }
+            stagingDir = null;
+        }
+    }
+
+    private void closeSession(SVNRepository r, boolean reuse) {
+        if(reuse) {
+            SessionCache.INSTANCE.checkIn(sessionKey,r);
+        } else {
+            r.closeSession();
+        }
+    }
+
+    /**
+     * Downloads a resource. This method can be called from multiple threads concurrently,
+     * and each call uses its own read session.
+     */
     public void get(String resourceName, File destination) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        SVNRepository session = borrowSession();
+        try {
+            get(session,resourceName,destination);
+        } finally {
+            sessions.release(session);
+        }
+    }
+
+    private void get(SVNRepository session, String resourceName, File destination) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
         Resource res = new Resource( resourceName );
         try {
             fireGetInitiated( res, destination );
             fireGetStarted( res, destination );
 
-            Map m = new HashMap();
-            destination.getParentFile().mkdirs();
-            FileOutputStream fos = new FileOutputStream(destination);
+            String path = toRepositoryPath(resourceName);
+            Download d = new Download(destination);
             try {
-                queryRepo.getFile(combine(rootPath,resourceName),-1/*head*/,m, fos);
+                long revision = getReadRevision(session);
+                long committed = -1;
+                String checksum = null;
+                if(contentCache!=null) {
+                    // if we are reading from a specific revision, we know the contents are in the cache
+                    // if we've downloaded them before at that revision.
+                    if(revision>=0)
+                        checksum = contentCache.lookup(repositoryUUID,path,revision);
+                    if(checksum==null) {
+                        long start = metrics.start();
+                        SVNDirEntry e = session.info(path,revision);
+                        metrics.roundTrip("info",start);
+                        if(e!=null) {
+                            committed = e.getRevision();
+                            checksum = contentCache.lookup(repositoryUUID,path,committed);
+                        }
+                    }
+                }
+
+                if(checksum!=null && !copyFromCache(d,checksum)) {
+                    // evicted by another JVM in the mean time, or corrupt. the server still has it
+                    contentCache.discard(checksum);
+                    checksum = null;
+                    d.abort();
+                    d = new Download(destination);
+                }
+
+                if(checksum!=null) {
+                    contentCache.hit();
+                    if(revision>=0 || committed>=0)
+                        freshness.fetched(destination,path,revision>=0 ? revision : committed);
+                    fireTransferDebug("Copied "+d.getSize()+" bytes from the content cache");
+                } else {
+                    if(contentCache!=null)
+                        contentCache.miss();
+                    Map m = new HashMap();
+                    long start = metrics.start();
+                    long r = session.getFile(path,revision,m,d);
+                    metrics.roundTrip("getFile",start);
+                    metrics.received(d.getSize());
+                    d.commit((String)m.get(SVNProperty.CHECKSUM));
+                    if(r>=0)
+                        freshness.fetched(destination,path,r);
+                    if(committed>=0) {
+                        if(revision>=0)
+                            contentCache.store(repositoryUUID,path,destination,d.getChecksum(),committed,revision);
+                        else
+                            contentCache.store(repositoryUUID,path,destination,d.getChecksum(),committed);
+                    }
+                    fireTransferDebug("Downloaded "+d.getSize()+" bytes at "+d.getRate()+" bytes/sec");
+                }
             } finally {
-                fos.close();
+                d.abort();
             }
 
             postProcessListeners( res, destination, TransferEvent.REQUEST_GET );
@@ -233,20 +758,182 @@ public class SubversionWagon extends AbstractWagon {
         }
     }
 
+    /**
+     * Copies the contents in {@link #contentCache} to the destination.
+     *
+     * @return
+     *      false if the contents can't be read, or don't match the checksum.
+     */
+    private boolean copyFromCache(Download d, String checksum) {
+        try {
+            d.transfer(new FileInputStream(contentCache.getContent(checksum)));
+            d.commit(checksum);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Maximum number of downloads that can run at the same time.
+     */
+    int getReadSessions() {
+        return Math.max(readSessions,1);
+    }
+
+    /**
+     * Downloads multiple resources in parallel, using as many read sessions as allowed.
+     *
+     * @param resources
+     *      Map from resource names to the destination files.
+     */
+    public void getAll(Map<String,File> resources) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,Math.min(readSessions,resources.size())));
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (final Map.Entry<String,File> e : resources.entrySet()) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        get(e.getKey(),e.getValue());
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Object> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException x) {
+                    Throwable t = x.getCause();
+                    if(t instanceof TransferFailedException)        throw (TransferFailedException)t;
+                    if(t instanceof ResourceDoesNotExistException)  throw (ResourceDoesNotExistException)t;
+                    if(t instanceof AuthorizationException)         throw (AuthorizationException)t;
+                    throw new TransferFailedException("Failed to download",t);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new TransferFailedException("Interrupted",e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public boolean getIfNewer(String resourceName, File destination, long timestamp) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        SVNRepository session = borrowSession();
         try {
-            SVNDirEntry e = queryRepo.info(combine(rootPath,resourceName), -1/*head*/);
+            long revision = getReadRevision(session);
+            long start = metrics.start();
+            boolean upToDate = freshness.isUpToDate(session,destination,toRepositoryPath(resourceName),revision);
+            metrics.time("freshness",start);
+            if(upToDate)
+                return false;   // not changed since we downloaded it
+
+            start = metrics.start();
+            SVNDirEntry e = session.info(combine(rootPath,resourceName), revision);
+            metrics.roundTrip("info",start);
             if( e.getDate().getTime() < timestamp )
                 return false;   // older
 
-            get(resourceName,destination);
+            get(session,resourceName,destination);
             return true;
         } catch (SVNException e) {
             throw new ResourceDoesNotExistException("Unable to find "+resourceName+" in "+getRepository().getUrl(),e);
+        } finally {
+            sessions.release(session);
+        }
+    }
+
+    public boolean resourceExists(String resourceName) throws TransferFailedException, AuthorizationException {
+        SVNRepository session = borrowSession();
+        try {
+            String path = toRepositoryPath(resourceName);
+            RemoteIndex index = getIndex(session);
+            if(index!=null)
+                return index.exists(session,path);
+            return session.checkPath(path,getReadRevision(session))!=SVNNodeKind.NONE;
+        } catch (SVNException e) {
+            throw new TransferFailedException("Unable to check "+resourceName+" in "+getRepository().getUrl(),e);
+        } finally {
+            sessions.release(session);
+        }
+    }
+
+    public List getFileList(String destinationDirectory) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        SVNRepository session = borrowSession();
+        try {
+            String path = toRepositoryPath(destinationDirectory);
+            RemoteIndex index = getIndex(session);
+            List<String> r = index!=null ? index.list(session,path) : RemoteIndex.list(session,path,getReadRevision(session));
+            if(r==null)
+                throw new ResourceDoesNotExistException("No such directory "+destinationDirectory+" in "+getRepository().getUrl());
+            return r;
+        } catch (SVNException e) {
+            throw new TransferFailedException("Unable to list "+destinationDirectory+" in "+getRepository().getUrl(),e);
+        } finally {
+            sessions.release(session);
+        }
+    }
+
+    /**
+     * Brings {@link #index} up to date once per connection.
+     *
+     * @return
+     *      null if we are reading from a revision other than the one indexed,
+     *      in which case the server needs to be asked directly.
+     */
+    private RemoteIndex getIndex(SVNRepository session) throws SVNException {
+        long r = getReadRevision(session);
+        synchronized(this) {
+            if(!indexUpdated) {
+                long start = metrics.start();
+                index.update(session);
+                metrics.time("index",start);
+                indexUpdated = true;
+            }
+        }
+        if(r>=0 && r!=index.getRevision())
+            return null;
+        return index;
+    }
+
+    /**
+     * Determines the revision to read from, pinning HEAD if we are asked to.
+     *
+     * @return
+     *      -1 to read from HEAD.
+     */
+    private synchronized long getReadRevision(SVNRepository session) throws SVNException {
+        if(readRevision<0 && pinReads) {
+            long start = metrics.start();
+            readRevision = session.getLatestRevision();
+            metrics.roundTrip("getLatestRevision",start);
+        }
+        return readRevision;
+    }
+
+    /**
+     * Obtains a read session from {@link #sessions}.
+     */
+    private SVNRepository borrowSession() throws TransferFailedException {
+        try {
+            return sessions.borrow();
+        } catch (SVNException e) {
+            throw new TransferFailedException("Unable to connect to "+getSubversionURL(),e);
+        } catch (InterruptedException e) {
+            throw new TransferFailedException("Interrupted",e);
         }
     }
 
     public void put(File source, String destination) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        put(source,destination,deferCommit && !batching);
+    }
+
+    /**
+     * @param stage
+     *      True to send a copy of the file, because the caller may change or delete it
+     *      before the commit.
+     */
+    private void put(File source, String destination, boolean stage) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
         destination = combine(rootPath,destination.replace('\\','/'));
         Resource res = new Resource(destination);
 
@@ -254,7 +941,15 @@ public class SubversionWagon extends AbstractWagon {
         firePutStarted(res,source);
 
         try {
-            put(source,"/", editor,destination);
+            String path = normalize('/'+destination);
+            long committed = journal!=null ? journal.getCommitted(path,source) : -1;
+            if(committed>=0) {
+                fireTransferDebug("Skipping "+destination+" as it's already committed in r"+committed);
+            } else {
+                plan.add(path,stage ? stage(source) : source);
+                if(!deferCommit && !batching)
+                    flush();
+            }
 
             postProcessListeners( res, source, TransferEvent.REQUEST_PUT );
             firePutCompleted(res,source);
@@ -266,73 +961,79 @@ public class SubversionWagon extends AbstractWagon {
     }
 
     /**
-     * The way {@link ISVNEditor} works is to recursively open a sub-directory,
-     * so this is implemented as a recursion.
-     *
-     * @param source
-     *      The file to be uploaded.
-     * @param path
-     *      The current directory in SVN that we are in. String like "/foo/bar/zot"
-     * @param editor
-     *      The listener to receive what we are uploading.
-     * @param destination
-     *      Path relative to the 'path' parameter indicating where to upload. String like
-     */
-    private void put(File source, String path, ISVNEditor editor, String destination) throws SVNException, IOException {
-        pathAdded.add(normalize(path));
-        int idx = destination.indexOf('/');
-        if(idx>0) {
-            String head = destination.substring(0,idx);
-            String tail = destination.substring(idx+1);
-
-            String child = combine(path, head);
-
-            if(exists(child) || pathAdded.contains(normalize(child))) {
-                // directory exists
-                try {
-                    editor.openDir(child,-1);
-                } catch (SVNException e) {
-                    // in case it fails, try to fall back to add
-                    editor.addDir(child,null,-1);
-                }
-            } else
-                // directory doesn't exist
-                editor.addDir(child,null,-1);
+     * Sends all the files in {@link #plan} to the commit editor.
+     */
+    private void flush() throws SVNException, IOException {
+        if(plan.isEmpty())  return;
+        if(chunkFiles<=0 && chunkBytes<=0) {
+            send(plan);
+            return;
+        }
 
-            put(source,child, editor,tail);
-            editor.closeDir();
-        } else {
-            String filePath = combine(path, destination);
+        for (CommitPlan chunk : plan.split(chunkFiles,chunkBytes)) {
+            send(chunk);
+            if((chunkFiles>0 && filesInEdit>=chunkFiles) || (chunkBytes>0 && bytesInEdit>=chunkBytes))
+                commitEdit();
+        }
+    }
+
+    /**
+     * Sends the changes in the given plan to the current commit.
+     */
+    private void send(CommitPlan chunk) throws SVNException, IOException {
+        ISVNEditor editor = openEditor();
+        filesInEdit += chunk.size();
+        bytesInEdit += chunk.getBytes();
 
-            // file
-            if(exists(filePath) || pathAdded.contains(normalize(filePath)))
-                // update file
-                editor.openFile(filePath,-1);
-            else
-                // add file
-                editor.addFile(filePath,null,-1);
+        if(threads<=1 || chunk.size()==1) {
+            chunk.send(editor,tree,track(record(sender)));
+            return;
+        }
 
-            editor.applyTextDelta(filePath,null);
+        DeltaPipeline pipeline = new DeltaPipeline(deltaSender,sessions,threads,pipelineMemory);
+        try {
+            pipeline.start(track(chunk.files(tree)));
+            chunk.send(editor,tree,track(record(pipeline)));
+        } finally {
+            pipeline.shutdown();
+        }
+    }
 
-            SVNDeltaGenerator dg = new SVNDeltaGenerator();
-            FileInputStream fin = new FileInputStream(source);
-            String checksum = null;
-            try {
-                checksum = dg.sendDelta(filePath,fin,editor,true);
-            } finally {
-                fin.close();
-            }
-            editor.closeFile(filePath,checksum);
+    /**
+     * Commits what's sent so far. The next put starts a new commit.
+     */
+    private long commitEdit() throws SVNException {
+        editor.closeDir();
+        SVNCommitInfo info = editor.closeEdit();
+        editor = null;
+        fireTransferDebug("Committed "+filesInEdit+" files ("+bytesInEdit+" bytes) as r"+info.getNewRevision());
+        synchronized(this) {
+            indexUpdated = false;   // so that the index picks up what we just committed
         }
+        if(journal!=null)
+            journal.committed(sentInEdit,info.getNewRevision());
+        sentInEdit.clear();
+        pathsInEdit.clear();
+        filesInEdit = 0;
+        bytesInEdit = 0;
+        return info.getNewRevision();
     }
 
-    private boolean exists(String child) throws SVNException {
-        try {
-            return queryRepo.info(child,-1)!=null;
-        } catch (SVNException e) {
-            // https:// protocol reports an error whereas it should return null
-            return false;
+    /**
+     * Takes a copy of a small file so that it's still there when we commit.
+     * Large files are artifacts that Maven doesn't delete, and not worth copying.
+     */
+    private File stage(File source) throws IOException {
+        if(source.length()>STAGING_THRESHOLD)   return source;
+
+        if(stagingDir==null) {
+            stagingDir = File.createTempFile("wagon-svn","staging");
+            stagingDir.delete();
+            stagingDir.mkdirs();
         }
+        File copy = File.createTempFile("put",".tmp",stagingDir);
+        FileUtils.copyFile(source,copy);
+        return copy;
     }
 
     @Override
@@ -342,14 +1043,116 @@ public class SubversionWagon extends AbstractWagon {
 
     @Override
     public void putDirectory(File sourceDirectory, String destinationDirectory) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        if(destinationDirectory.equals("."))
+            destinationDirectory = "";  // site:deploy does this
+
         try {
             List<String> files = FileUtils.getFileNames( sourceDirectory, "**/**", "", false );
 
-            for (String file : files)
-                put(new File(sourceDirectory,file),combine(destinationDirectory,file));
+            DirectorySync ds = null;
+            if(sync)
+                ds = new DirectorySync(queryRepo,toRepositoryPath(destinationDirectory));
+
+            batching = true;
+            try {
+                for (String file : files) {
+                    File f = new File(sourceDirectory,file);
+                    if(ds!=null && !ds.isModified(file.replace('\\','/'),f))
+                        continue;
+                    put(f,combine(destinationDirectory,file));
+                }
+            } finally {
+                batching = false;
+            }
+
+            if(ds!=null) {
+                if(syncDelete)
+                    ds.deleteRest(plan,sourceDirectory);
+                fireTransferDebug(ds.toString());
+            }
+        } catch (SVNException e) {
+            throw new TransferFailedException("Failed to compare "+sourceDirectory+" with "+destinationDirectory,e);
         } catch (IOException e) {
             throw new TransferFailedException("Failed to list up files in "+sourceDirectory,e);
         }
+
+        if(!deferCommit) {
+            try {
+                flush();
+            } catch (SVNException e) {
+                throw new TransferFailedException("Failed to write to "+destinationDirectory,e);
+            } catch (IOException e) {
+                throw new TransferFailedException("Failed to write to "+destinationDirectory,e);
+            }
+        }
+    }
+
+    /**
+     * Uploads multiple files as one change, the way {@link #putDirectory(File, String)} does.
+     * Unlike directory uploads, the caller may delete the files right away,
+     * so small files are copied if the commit is deferred.
+     *
+     * @param resources
+     *      Map from resource names to the files to be uploaded.
+     */
+    public void putAll(Map<String,File> resources) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        batching = true;
+        try {
+            for (Map.Entry<String,File> e : resources.entrySet())
+                put(e.getValue(),e.getKey(),deferCommit);
+        } finally {
+            batching = false;
+        }
+
+        if(!deferCommit) {
+            try {
+                flush();
+            } catch (SVNException e) {
+                throw new TransferFailedException("Failed to write "+resources.size()+" files",e);
+            } catch (IOException e) {
+                throw new TransferFailedException("Failed to write "+resources.size()+" files",e);
+            }
+        }
+    }
+
+    /**
+     * Commits everything put so far, instead of waiting for the connection to be closed.
+     * If this fails, nothing put so far is committed, and the next put starts afresh.
+     *
+     * @return
+     *      The new revision, or -1 if there was nothing to commit.
+     */
+    public long commit() throws TransferFailedException {
+        try {
+            flush();
+            if(editor==null)    return -1;
+            return commitEdit();
+        } catch (SVNException e) {
+            rollback();
+            throw new TransferFailedException("Failed to commit",e);
+        } catch (IOException e) {
+            rollback();
+            throw new TransferFailedException("Failed to commit",e);
+        }
+    }
+
+    /**
+     * Aborts the commit in progress and discards what's put but not yet sent,
+     * and keeps the connection usable for the next commit.
+     */
+    void rollback() {
+        abort();
+        plan.clear();
+        // the tree thinks the paths added by the aborted commit exist
+        tree = new RemoteTree(queryRepo,rootPath,!prefetchTree,metrics);
+    }
+
+    /**
+     * Converts a resource name relative to the wagon root into a path from the repository root,
+     * like "/trunk/repository/foo/bar.jar".
+     */
+    private String toRepositoryPath(String name) {
+        return normalize('/'+combine(rootPath,name.replace('\\','/')));
     }
 
     private String combine(String head, String tail) {
@@ -364,13 +1167,24 @@ public class SubversionWagon extends AbstractWagon {
      * so this method is to clean that up.
      */
     private String normalize(String str) {
-        while(true) {
-            int idx = str.indexOf("//");
-            if(idx<0)   return str;
-            str = str.substring(0,idx)+str.substring(idx+1);
+        int idx = str.indexOf("//");
+        if(idx<0)   return str;
+
+        StringBuilder buf = new StringBuilder(str.length());
+        buf.append(str,0,idx+1);
+        for (int i=idx+2; i<str.length(); i++) {
+            char ch = str.charAt(i);
+            if(ch!='/' || str.charAt(i-1)!='/')
+                buf.append(ch);
         }
+        return buf.toString();
     }
 
+    /**
+     * Files bigger than this are not copied by deferred puts.
+     */
+    private static final long STAGING_THRESHOLD = 1024*1024;
+
     static {
         DAVRepositoryFactory.setup();   // http, https
         SVNRepositoryFactoryImpl.setup();   // svn, svn+xxx
@@ -0,0 +1,309 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts round trips and bytes, and keeps a latency histogram per operation,
+ * so that we can tell where the time of a slow deployment went.
+ *
+ * <p>
+ * Operations are either server round trips like "getFile" and "addDir",
+ * or local phases like "delta" that are timed but not counted as round trips.
+ * Each wagon has its own instance, which also adds everything to {@link #INSTANCE},
+ * the total of this JVM exposed through JMX.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class TransferMetrics implements TransferMetricsMBean {
+    private final TransferMetrics parent;
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private final Map<String,Histogram> histograms = new ConcurrentHashMap<String,Histogram>();
+
+    public TransferMetrics(TransferMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Latencies in buckets of powers of two microseconds.
+     */
+    private static final class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(40);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void add(long nanos) {
+            long micros = nanos/1000;
+            buckets.incrementAndGet(micros==0 ? 0 : 64-Long.numberOfLeadingZeros(micros));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long m;
+            while((m=max.get())<nanos && !max.compareAndSet(m,nanos))
+                ;
+        }
+
+        /**
+         * Upper bound of the given percentile, in milliseconds.
+         */
+        double percentile(double p) {
+            long n = count.get();
+            long threshold = (long)Math.ceil(n*p);
+            long seen = 0;
+            for (int i=0; i<buckets.length(); i++) {
+                seen += buckets.get(i);
+                if(seen>=threshold && seen>0)
+                    return (1L<<i)/1000.0;
+            }
+            return max.get()/1000000.0;
+        }
+
+        double mean() {
+            long n = count.get();
+            return n==0 ? 0 : total.get()/1000000.0/n;
+        }
+    }
+
+    /**
+     * Marks the start of an operation.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a server round trip that started at the given time.
+     */
+    public void roundTrip(String op, long start) {
+        record(op,System.nanoTime()-start,true);
+    }
+
+    /**
+     * Records a local phase that started at the given time.
+     */
+    public void time(String op, long start) {
+        record(op,System.nanoTime()-start,false);
+    }
+
+    private void record(String op, long nanos, boolean roundTrip) {
+        if(roundTrip)
+            roundTrips.incrementAndGet();
+        Histogram h = histograms.get(op);
+        if(h==null) {
+            synchronized(histograms) {
+                h = histograms.get(op);
+                if(h==null)
+                    histograms.put(op,h=new Histogram());
+            }
+        }
+        h.add(nanos);
+        if(parent!=null)
+            parent.record(op,nanos,roundTrip);
+    }
+
+    public void sent(long bytes) {
+        bytesSent.addAndGet(bytes);
+        if(parent!=null)    parent.sent(bytes);
+    }
+
+    public void received(long bytes) {
+        bytesReceived.addAndGet(bytes);
+        if(parent!=null)    parent.received(bytes);
+    }
+
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Number of times the given operation is recorded.
+     */
+    public long getCount(String op) {
+        Histogram h = histograms.get(op);
+        return h==null ? 0 : h.count.get();
+    }
+
+    public String[] getOperations() {
+        Map<String,Histogram> sorted = new TreeMap<String,Histogram>(histograms);
+        String[] r = new String[sorted.size()];
+        int i=0;
+        for (Map.Entry<String,Histogram> e : sorted.entrySet()) {
+            Histogram h = e.getValue();
+            r[i++] = String.format(Locale.ENGLISH,"%s count=%d mean=%.3fms p50<%.3fms p90<%.3fms p99<%.3fms max=%.3fms",
+                e.getKey(), h.count.get(), h.mean(), h.percentile(0.5), h.percentile(0.9), h.percentile(0.99), h.max.get()/1000000.0);
+        }
+        return r;
+    }
+
+    public String getJSON() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("{\n  \"roundTrips\": ").append(getRoundTrips());
+        buf.append(",\n  \"bytesSent\": ").append(getBytesSent());
+        buf.append(",\n  \"bytesReceived\": ").append(getBytesReceived());
+        buf.append(",\n  \"operations\": {");
+        boolean first = true;
+        for (Map.Entry<String,Histogram> e : new TreeMap<String,Histogram>(histograms).entrySet()) {
+            Histogram h = e.getValue();
+            buf.append(first?"\n":",\n");
+            first = false;
+            buf.append(String.format(Locale.ENGLISH,"    \"%s\": {\"count\": %d, \"meanMs\": %.3f, \"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f, \"buckets\": %s}",
+                e.getKey(), h.count.get(), h.mean(), h.percentile(0.5), h.percentile(0.9), h.percentile(0.99), h.max.get()/1000000.0, h.buckets));
+        }
+        buf.append("\n  }\n}\n");
+        return buf.toString();
+    }
+
+    public void reset() {
+        roundTrips.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        histograms.clear();
+    }
+
+    /**
+     * Writes {@link #getJSON()} to the given file.
+     */
+    public void writeJSON(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent!=null)    parent.mkdirs();
+        Writer w = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+        try {
+            w.write(getJSON());
+        } finally {
+            w.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getRoundTrips()+" round trips, "+getBytesSent()+" bytes sent, "+getBytesReceived()+" bytes received";
+    }
+
+    /**
+     * Wraps a commit editor so that the calls to it are timed.
+     * The time from {@link ISVNEditor#applyTextDelta(String, String)} to
+     * {@link ISVNEditor#textDeltaEnd(String)} is recorded as "applyTextDelta".
+     */
+    public ISVNEditor wrap(final ISVNEditor editor) {
+        return (ISVNEditor)Proxy.newProxyInstance(ISVNEditor.class.getClassLoader(),new Class[]{ISVNEditor.class},new InvocationHandler() {
+            /**
+             * Start time of the text deltas in progress, keyed by path.
+             */
+            private final Map<Object,Long> deltas = new HashMap<Object,Long>();
+
+            public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                long start = start();
+                if(name.equals("applyTextDelta"))
+                    deltas.put(args[0],start);
+                if(name.equals("textDeltaChunk"))
+                    sent(((SVNDiffWindow)args[1]).getDataLength());
+
+                Object r;
+                try {
+                    r = m.invoke(editor,args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+
+                if(name.equals("textDeltaEnd")) {
+                    Long s = deltas.remove(args[0]);
+                    if(s!=null)
+                        roundTrip("applyTextDelta",s);
+                } else
+                if(ROUND_TRIPS.contains(name))
+                    roundTrip(name,start);
+                return r;
+            }
+        });
+    }
+
+    /**
+     * Editor calls that make a request to the server.
+     */
+    private static final Set<String> ROUND_TRIPS = new HashSet<String>(Arrays.asList(
+        "openRoot","openDir","addDir","deleteEntry","openFile","addFile","closeEdit"));
+
+    /**
+     * Total of all the wagons in this JVM.
+     */
+    public static final TransferMetrics INSTANCE = new TransferMetrics(null);
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                new ObjectName("com.sun.wts.tools.maven:type=TransferMetrics"));
+        } catch (Exception e) {
+            // already registered by another class loader, or no JMX. metrics are still collected
+        }
+    }
+}
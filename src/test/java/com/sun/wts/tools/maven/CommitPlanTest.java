@@ -0,0 +1,160 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link CommitPlan#split(int, long)}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class CommitPlanTest {
+    private LocalRepository repo;
+    /**
+     * Tree of an empty repository, to list the plans with.
+     */
+    private RemoteTree tree;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new LocalRepository();
+        tree = new RemoteTree(repo.session,"",true,new TransferMetrics(null));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        repo.dispose();
+    }
+
+    @Test
+    public void noLimits() throws Exception {
+        CommitPlan plan = plan(3,3,3);
+        List<CommitPlan> chunks = plan.split(0,0);
+        assertEquals(1,chunks.size());
+        assertEquals(paths(plan(3,3,3)),paths(chunks.get(0)));
+        assertTrue(plan.isEmpty());
+    }
+
+    /**
+     * Plans are cut after the directory that reaches the limit.
+     */
+    @Test
+    public void cutBetweenDirectories() throws Exception {
+        List<CommitPlan> chunks = plan(3,3,3).split(4,0);
+        assertEquals(2,chunks.size());
+        assertEquals(Arrays.asList("/d0/f0","/d0/f1","/d0/f2","/d1/f0","/d1/f1","/d1/f2"),paths(chunks.get(0)));
+        assertEquals(Arrays.asList("/d2/f0","/d2/f1","/d2/f2"),paths(chunks.get(1)));
+    }
+
+    @Test
+    public void cutByBytes() throws Exception {
+        // 100 bytes each
+        List<CommitPlan> chunks = plan(2,2,2).split(0,250);
+        assertEquals(2,chunks.size());
+        assertEquals(400,chunks.get(0).getBytes());
+        assertEquals(200,chunks.get(1).getBytes());
+    }
+
+    /**
+     * A directory twice as big as the limit is cut in the middle.
+     */
+    @Test
+    public void cutInDirectory() throws Exception {
+        List<CommitPlan> chunks = plan(10).split(2,0);
+        assertEquals(3,chunks.size());
+        assertEquals(4,chunks.get(0).size());
+        assertEquals(4,chunks.get(1).size());
+        assertEquals(2,chunks.get(2).size());
+
+        List<String> all = new ArrayList<String>();
+        for (CommitPlan c : chunks)
+            all.addAll(paths(c));
+        assertEquals(paths(plan(10)),all);
+    }
+
+    @Test
+    public void deletes() throws Exception {
+        CommitPlan plan = plan(1,1);
+        plan.delete("/d0/old");
+        plan.delete("/d1/old");
+        List<CommitPlan> chunks = plan.split(2,0);
+        assertEquals(2,chunks.size());
+        assertEquals(2,chunks.get(0).size());
+        assertEquals(2,chunks.get(1).size());
+    }
+
+    /**
+     * Creates a plan with directories "/d0", "/d1", ... that have the given number of 100-byte files.
+     */
+    private CommitPlan plan(int... files) throws IOException {
+        CommitPlan plan = new CommitPlan();
+        for (int i=0; i<files.length; i++)
+            for (int j=0; j<files[i]; j++)
+                plan.add("/d"+i+"/f"+j,file(i+"-"+j));
+        return plan;
+    }
+
+    private File file(String name) throws IOException {
+        File f = new File(repo.dir,name);
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    private List<String> paths(CommitPlan plan) throws Exception {
+        List<String> r = new ArrayList<String>();
+        for (CommitPlan.Item item : plan.files(tree))
+            r.add(item.path);
+        return r;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link ContentCache}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class ContentCacheTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("wagon-svn","test");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        ContentCache cache = new ContentCache(new File(dir,"cache"),1000);
+        File f = createFile("a",100);
+        cache.store("uuid","/a",f,"aaaa",3,5);
+
+        assertEquals("aaaa",cache.lookup("uuid","/a",5));
+        assertEquals("aaaa",cache.lookup("uuid","/a",4,3));
+        assertNull(cache.lookup("uuid","/a",4));
+        assertNull(cache.lookup("other","/a",3));
+        assertEquals(100,cache.getContent("aaaa").length());
+
+        // only what the caller reports is counted
+        assertEquals(0,cache.getHits());
+        assertEquals(0,cache.getMisses());
+    }
+
+    /**
+     * The least recently used contents are evicted along with the index entries that point to them.
+     */
+    @Test
+    public void eviction() throws Exception {
+        File cacheDir = new File(dir,"cache");
+        ContentCache cache = new ContentCache(cacheDir,1000);
+        cache.store("uuid","/a",createFile("a",400),"aaaa",1);
+        new File(cacheDir,"blobs/aaaa").setLastModified(System.currentTimeMillis()-60000);
+        cache.store("uuid","/b",createFile("b",400),"bbbb",1,2);
+        cache.store("uuid","/c",createFile("c",400),"cccc",1);
+
+        assertEquals(1,cache.getEvictions());
+        assertEquals(3,new File(cacheDir,"index").list().length);
+        assertNull(cache.lookup("uuid","/a",1));
+        assertEquals("bbbb",cache.lookup("uuid","/b",2));
+        assertEquals("cccc",cache.lookup("uuid","/c",1));
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File f = new File(dir,name);
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+}
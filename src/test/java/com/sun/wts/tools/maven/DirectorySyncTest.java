@@ -0,0 +1,106 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link DirectorySync}, in particular what it deletes.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DirectorySyncTest {
+    private LocalRepository repo;
+    private File local;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new LocalRepository();
+        repo.add("www/a.html","www/.cvsignore","www/gone.html","www/old/x.html","www/old/sub/y.html",
+            "www/keep/z.html","www/keep/sub/w.html");
+
+        local = new File(repo.dir,"site");
+        createFile("a.html");
+        createFile(".cvsignore");
+        createFile("keep/sub/w.html");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repo.dispose();
+    }
+
+    @Test
+    public void deleteRest() throws Exception {
+        DirectorySync ds = new DirectorySync(repo.session,"/www");
+        // what putDirectory() uploads, which leaves out .cvsignore.
+        // the files in the repository have no text, so their checksums never match
+        ds.isModified("a.html",new File(local,"a.html"));
+        ds.isModified("keep/sub/w.html",new File(local,"keep/sub/w.html"));
+
+        CommitPlan plan = new CommitPlan();
+        ds.deleteRest(plan,local);
+        assertEquals(3,plan.size());
+
+        ISVNEditor editor = repo.edit();
+        plan.send(editor,new RemoteTree(repo.session,"",true,new TransferMetrics(null)),null);
+        editor.closeDir();
+        editor.closeEdit();
+
+        assertEquals(SVNNodeKind.FILE,repo.session.checkPath("www/a.html",-1));
+        assertEquals(SVNNodeKind.FILE,repo.session.checkPath("www/.cvsignore",-1));
+        assertEquals(SVNNodeKind.NONE,repo.session.checkPath("www/gone.html",-1));
+        assertEquals(SVNNodeKind.NONE,repo.session.checkPath("www/old",-1));
+        assertEquals(SVNNodeKind.NONE,repo.session.checkPath("www/keep/z.html",-1));
+        assertEquals(SVNNodeKind.FILE,repo.session.checkPath("www/keep/sub/w.html",-1));
+        assertEquals("Uploaded 2 files, skipped 0 unchanged files, deleted 2 files and 1 directories",ds.toString());
+    }
+
+    private void createFile(String path) throws IOException {
+        File f = new File(local,path);
+        f.getParentFile().mkdirs();
+        f.createNewFile();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link Download}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DownloadTest {
+    private File dir;
+    private File dest;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("wagon-svn","test");
+        dir.delete();
+        dir.mkdirs();
+        dest = new File(dir,"a/b.jar");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Data bigger than the buffer, written in pieces of all sizes, replacing an existing file.
+     */
+    @Test
+    public void commit() throws Exception {
+        byte[] old = download(100,null);
+        assertArrayEquals(old,read(dest));
+
+        byte[] data = download(200*1024+17,null);
+        assertArrayEquals(data,read(dest));
+        assertEquals(1,dest.getParentFile().list().length);
+    }
+
+    /**
+     * A download that doesn't match the checksum leaves the previous file alone.
+     */
+    @Test
+    public void checksumMismatch() throws Exception {
+        byte[] old = download(100,null);
+        try {
+            download(1000,"00000000000000000000000000000000");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertArrayEquals(old,read(dest));
+        assertEquals(1,dest.getParentFile().list().length);
+    }
+
+    @Test
+    public void abort() throws Exception {
+        Download d = new Download(dest);
+        d.write(new byte[10],0,10);
+        d.abort();
+        assertFalse(dest.exists());
+        assertEquals(0,dest.getParentFile().list().length);
+    }
+
+    private byte[] download(int size, String expectedChecksum) throws IOException {
+        byte[] data = new byte[size];
+        Random r = new Random(size);
+        r.nextBytes(data);
+
+        Download d = new Download(dest);
+        try {
+            // a byte at a time, then in pieces of varying sizes
+            int off = 0;
+            for (; off<Math.min(size,10); off++)
+                d.write(data[off]);
+            d.transfer(new ByteArrayInputStream(data,off,size-off));
+            assertEquals(size,d.getSize());
+            d.commit(expectedChecksum);
+        } finally {
+            d.abort();
+        }
+        return data;
+    }
+
+    private static byte[] read(File f) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileInputStream in = new FileInputStream(f);
+        try {
+            byte[] buf = new byte[8192];
+            int len;
+            while((len=in.read(buf))>=0)
+                out.write(buf,0,len);
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link FreshnessIndex}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FreshnessIndexTest {
+    private LocalRepository repo;
+    private File file;
+    private File x, y;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new LocalRepository();
+        file = new File(repo.dir,"fetched.properties");
+        x = createFile("x.jar");
+        y = createFile("y.jar");
+        repo.add("a/x.jar","a/y.jar");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repo.dispose();
+    }
+
+    @Test
+    public void changes() throws Exception {
+        FreshnessIndex index = new FreshnessIndex(file,"/a");
+        index.fetched(x,"/a/x.jar",1);
+        index.fetched(y,"/a/y.jar",1);
+        index.save();
+
+        // an unrelated commit, and one that replaces y.jar
+        repo.add("a/z.jar");
+        ISVNEditor editor = repo.edit();
+        editor.deleteEntry("a/y.jar",-1);
+        editor.openDir("a",-1);
+        editor.addFile("a/y.jar",null,-1);
+        editor.closeFile("a/y.jar",null);
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+
+        index = new FreshnessIndex(file,"/a");
+        assertTrue(index.isUpToDate(repo.session,x,"/a/x.jar",-1));
+        assertFalse(index.isUpToDate(repo.session,y,"/a/y.jar",-1));
+        // reading from the revision it's downloaded at
+        assertTrue(new FreshnessIndex(file,"/a").isUpToDate(repo.session,y,"/a/y.jar",1));
+        // not the file we downloaded
+        assertFalse(index.isUpToDate(repo.session,x,"/a/y.jar",-1));
+    }
+
+    @Test
+    public void prune() throws Exception {
+        FreshnessIndex index = new FreshnessIndex(file,"/a");
+        index.fetched(x,"/a/x.jar",1);
+        index.fetched(y,"/a/y.jar",1);
+        y.delete();
+        index.save();
+
+        Properties props = new Properties();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        assertEquals(1,props.size());
+        assertTrue(props.containsKey(x.getAbsolutePath()));
+    }
+
+    private File createFile(String name) throws IOException {
+        File f = new File(repo.dir,name);
+        f.createNewFile();
+        return f;
+    }
+}
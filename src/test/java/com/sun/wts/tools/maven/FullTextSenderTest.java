@@ -0,0 +1,227 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the svndiff windows that {@link FullTextSender} writes by hand, by serializing them
+ * the way a commit editor does, and reading them back with SVNKit. Also tests the choice
+ * of compression that {@link CompressingConsumer} makes.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FullTextSenderTest {
+    private File file;
+    private final FullTextSender sender = new FullTextSender();
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("wagon-svn","test");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Lengths around the boundaries of the instruction encoding and of the windows.
+     */
+    @Test
+    public void lengths() throws Exception {
+        int window = 100*1024;
+        int[] sizes = {0,1,63,64,65,127,128,129,16383,16384,16385,window-1,window,window+1,3*window+12345};
+        for (int size : sizes)
+            roundTrip(size);
+    }
+
+    /**
+     * Buffers are reused from one file to the next, so a shorter file must not see the previous one.
+     */
+    @Test
+    public void reuse() throws Exception {
+        roundTrip(250*1024);
+        roundTrip(10);
+        roundTrip(150*1024);
+    }
+
+    /**
+     * Text is compressed even though the editor doesn't ask for it, like the DAV editor.
+     */
+    @Test
+    public void compressText() throws Exception {
+        byte[] data = text(250*1024);
+        AtomicLong saved = new AtomicLong();
+        Serializer s = new Serializer(false);
+        assertArrayEquals(data,roundTrip(data,s,new CompressingConsumer(s,true,true,saved)));
+        assertEquals(1,s.out.toByteArray()[3]);
+        assertTrue(saved.get()>data.length/2);
+    }
+
+    /**
+     * Compressed files are sent as they are, even if the editor asks for compression, like the svn:// editor.
+     */
+    @Test
+    public void skipCompressed() throws Exception {
+        byte[] data = text(250*1024);
+        AtomicLong saved = new AtomicLong();
+        Serializer s = new Serializer(true);
+        assertArrayEquals(data,roundTrip(data,s,new CompressingConsumer(s,false,false,saved)));
+        assertEquals(0,s.out.toByteArray()[3]);
+        assertEquals(0,saved.get());
+
+        // and text is compressed when the editor asks
+        s = new Serializer(true);
+        assertArrayEquals(data,roundTrip(data,s,new CompressingConsumer(s,true,false,saved)));
+        assertEquals(1,s.out.toByteArray()[3]);
+        assertTrue(saved.get()>0);
+    }
+
+    private static byte[] text(int size) {
+        byte[] data = new byte[size];
+        Random r = new Random(size);
+        for (int i=0; i<size; i++)
+            data[i] = (byte)('a'+r.nextInt(8));
+        return data;
+    }
+
+    private void roundTrip(int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Serializer s = new Serializer(false);
+        assertArrayEquals("size "+size,data,roundTrip(data,s,s));
+    }
+
+    /**
+     * Sends the data through the consumer, and applies what the serializer wrote.
+     */
+    private byte[] roundTrip(byte[] data, Serializer s, ISVNDeltaConsumer consumer) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        consumer.applyTextDelta("f",null);
+        String md5 = sender.send(consumer,"f",file);
+
+        Applier a = new Applier();
+        a.applyTextDelta("f",null);
+        SVNDeltaReader reader = new SVNDeltaReader();
+        byte[] svndiff = s.out.toByteArray();
+        reader.nextWindow(svndiff,0,svndiff.length,"f",a);
+        a.textDeltaEnd("f");
+
+        assertEquals("size "+data.length,a.checksum,md5);
+        return a.out.toByteArray();
+    }
+
+    /**
+     * Writes the windows as an svndiff stream, like the commit editors do.
+     */
+    private static final class Serializer implements ISVNDeltaConsumer {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private boolean header = true;
+        /**
+         * True to ask for compression like the svn:// editor does for a server that supports it.
+         */
+        private final boolean compress;
+
+        Serializer(boolean compress) {
+            this.compress = compress;
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) {}
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow window) throws SVNException {
+            try {
+                if(compress)
+                    window.writeTo(out,header,true);
+                else
+                    window.writeTo(out,header);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            header = false;
+            return null;
+        }
+
+        public void textDeltaEnd(String path) {}
+    }
+
+    /**
+     * Applies the windows to an empty file.
+     */
+    private static final class Applier implements ISVNDeltaConsumer {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final SVNDeltaProcessor processor = new SVNDeltaProcessor();
+        String checksum;
+
+        public void applyTextDelta(String path, String baseChecksum) {
+            processor.applyTextDelta(new ByteArrayInputStream(new byte[0]),out,true);
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow window) throws SVNException {
+            return processor.textDeltaChunk(window);
+        }
+
+        public void textDeltaEnd(String path) {
+            checksum = processor.textDeltaEnd();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * FSFS repository in a temporary directory, for tests that need a server.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class LocalRepository {
+    final File dir;
+    final SVNURL url;
+    /**
+     * Session located at the repository root.
+     */
+    final SVNRepository session;
+    /**
+     * Session that commits, since a session can't be used while it's committing.
+     */
+    private final SVNRepository committer;
+
+    LocalRepository() throws IOException, SVNException {
+        dir = File.createTempFile("wagon-svn","test");
+        dir.delete();
+        dir.mkdirs();
+
+        FSRepositoryFactory.setup();
+        url = SVNRepositoryFactory.createLocalRepository(new File(dir,"repo"),true,false);
+        session = SVNRepositoryFactory.create(url);
+        committer = SVNRepositoryFactory.create(url);
+        committer.setAuthenticationManager(SVNWCUtil.createDefaultAuthenticationManager(new File(dir,"config"),"tester",""));
+    }
+
+    /**
+     * Starts a commit. The root directory is already open.
+     */
+    ISVNEditor edit() throws SVNException {
+        ISVNEditor editor = committer.getCommitEditor("test",null);
+        editor.openRoot(-1);
+        return editor;
+    }
+
+    /**
+     * Adds empty files and the directories they're in, in one commit.
+     *
+     * @param paths
+     *      Paths from the repository root without the leading '/', like "a/b/c.txt".
+     *      A path that ends with '/' is a directory.
+     */
+    void add(String... paths) throws SVNException {
+        ISVNEditor editor = edit();
+        List<String> open = new ArrayList<String>();    // directories opened or added so far, innermost last
+        Set<String> added = new HashSet<String>();
+        for (String path : new TreeSet<String>(Arrays.asList(paths))) {
+            String[] names = path.split("/");
+            int dirs = path.endsWith("/") ? names.length : names.length-1;
+
+            String p = "";
+            int depth = 0;
+            for (; depth<dirs; depth++) {
+                p = p.length()==0 ? names[depth] : p+'/'+names[depth];
+                if(depth<open.size() && open.get(depth).equals(p))
+                    continue;
+                while(open.size()>depth) {
+                    editor.closeDir();
+                    open.remove(open.size()-1);
+                }
+                if(added.contains(p) || session.checkPath(p,-1)==SVNNodeKind.DIR) {
+                    editor.openDir(p,-1);
+                } else {
+                    editor.addDir(p,null,-1);
+                    added.add(p);
+                }
+                open.add(p);
+            }
+            if(dirs<names.length) {
+                while(open.size()>dirs) {
+                    editor.closeDir();
+                    open.remove(open.size()-1);
+                }
+                editor.addFile(path,null,-1);
+                editor.closeFile(path,null);
+            }
+        }
+        for (int i=0; i<open.size(); i++)
+            editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+    }
+
+    void dispose() throws IOException {
+        session.closeSession();
+        committer.closeSession();
+        FileUtils.deleteDirectory(dir);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link RemoteIndex}, in particular that commits made after the index was brought up to date
+ * discard the listings they change.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RemoteIndexTest {
+    private LocalRepository repo;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new LocalRepository();
+        file = new File(repo.dir,"index.properties");
+        repo.add("a/x.jar","a/sub/y.jar","b/z.jar");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repo.dispose();
+    }
+
+    @Test
+    public void listAndExists() throws Exception {
+        RemoteIndex index = new RemoteIndex(file);
+        index.update(repo.session);
+        assertEquals(1,index.getRevision());
+
+        assertEquals(Arrays.asList("a/","b/"),list(index,"/"));
+        assertEquals(Arrays.asList("sub/","x.jar"),list(index,"/a/"));
+        assertNull(index.list(repo.session,"/c"));
+        assertNull(index.list(repo.session,"/a/x.jar"));
+        assertTrue(index.exists(repo.session,"/a/sub"));
+        assertTrue(index.exists(repo.session,"/a/sub/y.jar"));
+        assertFalse(index.exists(repo.session,"/a/sub/w.jar"));
+        assertFalse(index.exists(repo.session,"/c/w.jar"));
+    }
+
+    @Test
+    public void invalidation() throws Exception {
+        RemoteIndex index = new RemoteIndex(file);
+        index.update(repo.session);
+        assertEquals(Arrays.asList("sub/","x.jar"),list(index,"/a"));
+        assertEquals(Arrays.asList("y.jar"),list(index,"/a/sub"));
+        assertEquals(Arrays.asList("z.jar"),list(index,"/b"));
+        assertNull(index.list(repo.session,"/c"));
+
+        repo.add("a/w.jar","c/v.jar");
+        ISVNEditor editor = repo.edit();
+        editor.deleteEntry("a/sub",-1);
+        editor.closeDir();
+        editor.closeEdit();
+
+        // the listings are of the revision of the index until it's brought up to date
+        assertEquals(Arrays.asList("sub/","x.jar"),list(index,"/a"));
+
+        index.update(repo.session);
+        assertEquals(3,index.getRevision());
+        assertEquals(Arrays.asList("w.jar","x.jar"),list(index,"/a"));
+        assertNull(index.list(repo.session,"/a/sub"));
+        assertEquals(Arrays.asList("v.jar"),list(index,"/c"));
+        assertEquals(Arrays.asList("z.jar"),list(index,"/b"));
+    }
+
+    /**
+     * A copy brings in a whole subtree, so what the index remembers underneath is discarded, too.
+     */
+    @Test
+    public void copy() throws Exception {
+        RemoteIndex index = new RemoteIndex(file);
+        index.update(repo.session);
+        assertNull(index.list(repo.session,"/d"));
+        assertNull(index.list(repo.session,"/d/sub"));
+        assertFalse(index.exists(repo.session,"/d/sub/y.jar"));
+
+        ISVNEditor editor = repo.edit();
+        editor.addDir("d","/a",1);
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+
+        index.update(repo.session);
+        assertEquals(Arrays.asList("sub/","x.jar"),list(index,"/d"));
+        assertEquals(Arrays.asList("y.jar"),list(index,"/d/sub"));
+        assertTrue(index.exists(repo.session,"/d/sub/y.jar"));
+    }
+
+    @Test
+    public void persistence() throws Exception {
+        RemoteIndex index = new RemoteIndex(file);
+        index.update(repo.session);
+        index.list(repo.session,"/a");
+        index.save();
+
+        repo.add("a/w.jar");
+
+        // what's saved is of the old revision, until it's brought up to date
+        index = new RemoteIndex(file);
+        assertEquals(1,index.getRevision());
+        assertEquals(Arrays.asList("sub/","x.jar"),list(index,"/a"));
+        index.update(repo.session);
+        assertEquals(Arrays.asList("sub/","w.jar","x.jar"),list(index,"/a"));
+    }
+
+    /**
+     * Lists a directory in the order of names.
+     */
+    private List<String> list(RemoteIndex index, String dir) throws SVNException {
+        List<String> r = index.list(repo.session,dir);
+        if(r!=null) Collections.sort(r);
+        return r;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link RemoteTree} against a local repository that has:
+ *
+ * <pre>
+ * /trunk/other.txt
+ * /trunk/repo/org/foo.jar
+ * /trunk/repo/org/bar/
+ * </pre>
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RemoteTreeTest {
+    private LocalRepository local;
+    private SVNRepository repo;
+    private final TransferMetrics metrics = new TransferMetrics(null);
+
+    @Before
+    public void setUp() throws Exception {
+        local = new LocalRepository();
+        local.add("trunk/other.txt","trunk/repo/org/foo.jar","trunk/repo/org/bar/");
+        repo = local.session;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        local.dispose();
+    }
+
+    @Test
+    public void lazy() throws SVNException {
+        RemoteTree tree = new RemoteTree(repo,"trunk/repo",true,metrics);
+        assertExisting(tree);
+        // each directory on the way is listed once: /, /trunk, /trunk/repo, /trunk/repo/org, and /trunk/repo/org/bar
+        assertEquals(5,metrics.getCount("getDir"));
+        assertEquals(0,metrics.getCount("checkPath"));
+        assertEquals(0,metrics.getCount("status"));
+    }
+
+    @Test
+    public void prefetch() throws SVNException {
+        RemoteTree tree = new RemoteTree(repo,"trunk/repo",false,metrics);
+        assertExisting(tree);
+        assertEquals(0,metrics.getCount("getDir"));
+        assertEquals(1,metrics.getCount("status"));
+        // the wagon root, and the two paths outside of it, one at a time
+        assertEquals(3,metrics.getCount("checkPath"));
+    }
+
+    private void assertExisting(RemoteTree tree) throws SVNException {
+        assertTrue(tree.exists("/trunk/repo/org/foo.jar"));
+        assertTrue(tree.exists("/trunk/repo/org/bar"));
+        assertTrue(tree.exists("/trunk/repo/org/bar/"));
+        assertFalse(tree.exists("/trunk/repo/org/baz"));
+        assertFalse(tree.exists("/trunk/repo/org/foo.jar/x"));
+        assertFalse(tree.exists("/trunk/repo/org/bar/x"));
+        assertFalse(tree.exists("/trunk/repo/com"));
+        // outside of the wagon root
+        assertTrue(tree.exists("/trunk/other.txt"));
+        assertFalse(tree.exists("/trunk/missing.txt"));
+        // asking again doesn't go to the server
+        long roundTrips = metrics.getRoundTrips();
+        assertTrue(tree.exists("/trunk/repo/org/foo.jar"));
+        assertFalse(tree.exists("/trunk/repo/org/baz"));
+        assertEquals(roundTrips,metrics.getRoundTrips());
+    }
+
+    @Test
+    public void addedAndDeleted() throws SVNException {
+        RemoteTree tree = new RemoteTree(repo,"trunk/repo",true,metrics);
+        assertFalse(tree.exists("/trunk/repo/org/new"));
+        tree.added("/trunk/repo/org/new/a.jar",false);
+        tree.added("/trunk/repo/org/dir",true);
+        long roundTrips = metrics.getRoundTrips();
+
+        assertTrue(tree.exists("/trunk/repo/org/new"));
+        assertTrue(tree.exists("/trunk/repo/org/new/a.jar"));
+        assertTrue(tree.exists("/trunk/repo/org/dir"));
+        // nothing can be in a directory that's just added
+        assertFalse(tree.exists("/trunk/repo/org/new/b.jar"));
+        assertFalse(tree.exists("/trunk/repo/org/dir/x"));
+        assertTrue(tree.exists("/trunk/repo/org/foo.jar"));
+
+        tree.deleted("/trunk/repo/org/foo.jar");
+        assertFalse(tree.exists("/trunk/repo/org/foo.jar"));
+        assertTrue(tree.exists("/trunk/repo/org/bar"));
+        assertEquals(roundTrips,metrics.getRoundTrips());
+    }
+
+    /**
+     * Adding underneath a file fails cleanly.
+     */
+    @Test
+    public void addUnderFile() throws SVNException {
+        RemoteTree tree = new RemoteTree(repo,"trunk/repo",true,metrics);
+        assertFalse(tree.exists("/trunk/repo/org/foo.jar/x"));
+        try {
+            tree.added("/trunk/repo/org/foo.jar/x",false);
+            fail();
+        } catch (SVNException e) {
+            assertEquals(SVNErrorCode.FS_NOT_DIRECTORY,e.getErrorMessage().getErrorCode());
+            assertTrue(e.getMessage(),e.getMessage().contains("/trunk/repo/org/foo.jar is a file"));
+        }
+    }
+
+    /**
+     * Names with the same hash code end up in the same slot,
+     * and a directory with many children grows its table several times.
+     */
+    @Test
+    public void collisionsAndRehashing() throws SVNException {
+        RemoteTree tree = new RemoteTree(repo,"trunk/repo",true,metrics);
+        assertFalse(tree.exists("/trunk/repo/big"));
+
+        String[] colliding = {"Aa","BB","AaAa","AaBB","BBAa","BBBB"};
+        assertEquals("Aa".hashCode(),"BB".hashCode());
+        assertEquals("AaAa".hashCode(),"BBBB".hashCode());
+        for (String name : colliding)
+            tree.added("/trunk/repo/big/"+name,false);
+        for (int i=0; i<1000; i++)
+            tree.added("/trunk/repo/big/file"+i+".jar",false);
+        long roundTrips = metrics.getRoundTrips();
+
+        for (String name : colliding)
+            assertTrue(name,tree.exists("/trunk/repo/big/"+name));
+        for (int i=0; i<1000; i++)
+            assertTrue(tree.exists("/trunk/repo/big/file"+i+".jar"));
+        assertFalse(tree.exists("/trunk/repo/big/Ab"));
+        assertFalse(tree.exists("/trunk/repo/big/file1000.jar"));
+        assertFalse(tree.exists("/trunk/repo/big/file1"));
+
+        // the other names in the same slot survive the removal of one of them
+        tree.deleted("/trunk/repo/big/Aa");
+        tree.deleted("/trunk/repo/big/AaAa");
+        assertFalse(tree.exists("/trunk/repo/big/Aa"));
+        assertFalse(tree.exists("/trunk/repo/big/AaAa"));
+        assertTrue(tree.exists("/trunk/repo/big/BB"));
+        assertTrue(tree.exists("/trunk/repo/big/AaBB"));
+        assertTrue(tree.exists("/trunk/repo/big/BBAa"));
+        assertTrue(tree.exists("/trunk/repo/big/BBBB"));
+        assertTrue(tree.exists("/trunk/repo/big/file999.jar"));
+
+        assertEquals(roundTrips,metrics.getRoundTrips());
+    }
+}
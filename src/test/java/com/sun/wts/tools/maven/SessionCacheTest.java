@@ -0,0 +1,114 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 1997-2008 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License. You can obtain
+ * a copy of the License at https://glassfish.dev.java.net/public/CDDL+GPL.html
+ * or glassfish/bootstrap/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/bootstrap/legal/LICENSE.txt.
+ * Sun designates this particular file as subject to the "Classpath" exception
+ * as provided by Sun in the GPL Version 2 section of the License file that
+ * accompanied this code.  If applicable, add the following below the License
+ * Header, with the fields enclosed by brackets [] replaced by your own
+ * identifying information: "Portions Copyrighted [year]
+ * [name of copyright owner]"
+ *
+ * Contributor(s):
+ *
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.wts.tools.maven;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link SessionCache}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SessionCacheTest {
+    private LocalRepository repo;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new LocalRepository();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repo.dispose();
+    }
+
+    @Test
+    public void reuse() throws Exception {
+        SessionCache cache = new SessionCache(16,60*1000);
+        SVNRepository a = session(), b = session();
+        cache.checkIn("x",a);
+        cache.checkIn("x",b);
+        assertNull(cache.checkOut("y"));
+        // most recently used first
+        assertSame(b,cache.checkOut("x"));
+        assertSame(a,cache.checkOut("x"));
+        assertNull(cache.checkOut("x"));
+    }
+
+    @Test
+    public void evictOldest() throws Exception {
+        SessionCache cache = new SessionCache(2,60*1000);
+        SVNRepository a = session(), b = session(), c = session();
+        cache.checkIn("x",a);
+        Thread.sleep(10);
+        cache.checkIn("y",b);
+        Thread.sleep(10);
+        cache.checkIn("x",c);
+        assertSame(c,cache.checkOut("x"));
+        assertNull(cache.checkOut("x"));
+        assertSame(b,cache.checkOut("y"));
+    }
+
+    @Test
+    public void expire() throws Exception {
+        SessionCache cache = new SessionCache(16,1);
+        cache.checkIn("x",session());
+        Thread.sleep(10);
+        assertNull(cache.checkOut("x"));
+    }
+
+    /**
+     * A timeout of 0 or less disables caching, like a size of 0.
+     */
+    @Test
+    public void disabled() throws Exception {
+        for (SessionCache cache : new SessionCache[]{new SessionCache(0,60*1000),new SessionCache(16,0),new SessionCache(16,-1)}) {
+            cache.checkIn("x",session());
+            assertNull(cache.checkOut("x"));
+        }
+    }
+
+    private SVNRepository session() throws Exception {
+        return SVNRepositoryFactory.create(repo.url);
+    }
+}